@@ -0,0 +1,158 @@
+package org.example.democolauam;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Background compares: a fixed number of workers and a bounded queue, so concurrent large
+// uploads wait (or get rejected) instead of piling up on Tomcat threads and the heap.
+@Component
+public class CompareJobs {
+
+    public enum Phase { QUEUED, PARSING, DIFFING, EXPORTING, DONE, FAILED }
+
+    // Does the compare and returns the result page
+    @FunctionalInterface
+    public interface Work {
+        String run(Job job) throws Exception;
+    }
+
+    public record Status(String id, Phase phase, Map<String, Long> rowsBySheet, long elapsedMs, String error) {}
+
+    public static final class Job {
+        final String id = UUID.randomUUID().toString().replace("-", "");
+        final Instant submitted = Instant.now();
+        final Map<String, Long> rows = new ConcurrentSkipListMap<>();
+        volatile Phase phase = Phase.QUEUED;
+        volatile Instant finished;
+        volatile String error;
+        volatile String resultHtml;
+
+        public String id() {
+            return id;
+        }
+
+        public void phase(Phase p) {
+            phase = p;
+        }
+
+        // rows of each sheet of one input, reported as "<label>/<sheet>"
+        public ExcelParser.Progress progress(String label) {
+            return (sheet, n) -> rows.put(label + "/" + sheet, n);
+        }
+
+        public String resultHtml() {
+            return resultHtml;
+        }
+
+        public Status status() {
+            Instant end = finished == null ? Instant.now() : finished;
+            return new Status(id, phase, Map.copyOf(rows), Duration.between(submitted, end).toMillis(), error);
+        }
+    }
+
+    // A place in the pool (a worker or a queue slot), taken before the uploads are copied so a
+    // full pool is answered before the upload costs anything. close() gives it back unless a job
+    // was submitted with it; the job gives it back when it ends.
+    public final class Slot implements AutoCloseable {
+        private boolean taken;
+
+        @Override
+        public void close() {
+            if (!taken) {
+                taken = true;
+                permits.release();
+            }
+        }
+    }
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final ThreadPoolExecutor pool;
+    private final Duration retention;
+
+    public CompareJobs(@Value("${jobs.workers:2}") int workers,
+                       @Value("${jobs.queue-capacity:8}") int queueCapacity,
+                       @Value("${jobs.retention-minutes:30}") long retentionMinutes) {
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "compare-job-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.permits = new Semaphore(workers + queueCapacity);
+    }
+
+    // RejectedExecutionException when every worker is busy and the queue is full
+    public Slot reserve() {
+        purge();
+        if (!permits.tryAcquire()) throw new RejectedExecutionException("Compare queue is full");
+        return new Slot();
+    }
+
+    public Job submit(Work work) {
+        try (Slot slot = reserve()) {
+            return submit(slot, work);
+        }
+    }
+
+    // the job owns the slot from here on, also when this throws
+    public Job submit(Slot slot, Work work) {
+        if (slot.taken) throw new IllegalStateException("Slot already used");
+        slot.taken = true;
+        Job job = new Job();
+        jobs.put(job.id, job);
+        try {
+            pool.execute(() -> {
+                try {
+                    run(job, work);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // a worker that just released its permit may not have picked up the next task yet
+            jobs.remove(job.id);
+            permits.release();
+            throw e;
+        }
+        return job;
+    }
+
+    public Job get(String id) {
+        return id == null ? null : jobs.get(id);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void run(Job job, Work work) {
+        try {
+            job.resultHtml = work.run(job);
+            job.phase = Phase.DONE;
+        } catch (Throwable e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            job.error = String.valueOf(cause.getMessage());
+            job.phase = Phase.FAILED;
+        } finally {
+            job.finished = Instant.now();
+        }
+    }
+
+    // finished jobs are kept as long as their exports, roughly
+    private void purge() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> j.finished != null && j.finished.isBefore(cutoff));
+    }
+}
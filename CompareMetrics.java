@@ -0,0 +1,98 @@
+package org.example.democolauam;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Timers per compare phase (parse, diff, export) and the diff's cardinalities. Durations carry
+// a percentile histogram, so p99 can be taken per instance or across them in Prometheus.
+@Component
+public class CompareMetrics {
+
+    private final MeterRegistry registry;
+
+    public CompareMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // mode: memory / external / snapshot / api ...
+    public Run start(String mode) {
+        return new Run(mode);
+    }
+
+    // CSVs are rendered while they are downloaded, so this is the CSV building time
+    public void downloaded(String encoding, long nanos) {
+        Timer.builder("export.download")
+                .description("Writing one export into the response")
+                .tag("encoding", encoding)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public final class Run {
+        private final String mode;
+        private final long start = System.nanoTime();
+        private long mark = start;
+
+        private Run(String mode) {
+            this.mode = mode;
+        }
+
+        // both inputs are parsed (for the external mode: read into sorted runs)
+        public void parsed() {
+            phase("parse");
+        }
+
+        public void diffed(DiffResult res) {
+            diffed(res.usersAdded.size(), res.usersRemoved.size(), res.userFieldChanges.size(),
+                    res.entAdded.size(), res.entRemoved.size());
+        }
+
+        // a streamed diff only has the counts
+        public void diffed(int usersAdded, int usersRemoved, int fieldChanges, int entAdded, int entRemoved) {
+            phase("diff");
+            changes("users_added", usersAdded);
+            changes("users_removed", usersRemoved);
+            changes("user_field_changes", fieldChanges);
+            changes("entitlements_added", entAdded);
+            changes("entitlements_removed", entRemoved);
+        }
+
+        // exports registered and the page rendered
+        public void exported() {
+            phase("export");
+        }
+
+        public void finished(boolean ok) {
+            Timer.builder("compare.duration")
+                    .description("Whole compare, upload to result page")
+                    .tag("mode", mode)
+                    .tag("outcome", ok ? "success" : "error")
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        private void phase(String phase) {
+            long now = System.nanoTime();
+            Timer.builder("compare.phase")
+                    .tag("mode", mode)
+                    .tag("phase", phase)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(now - mark, TimeUnit.NANOSECONDS);
+            mark = now;
+        }
+
+        private void changes(String kind, int n) {
+            DistributionSummary.builder("diff.changes")
+                    .description("Rows per kind of change, per compare")
+                    .tag("kind", kind)
+                    .register(registry)
+                    .record(n);
+        }
+    }
+}
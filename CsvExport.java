@@ -0,0 +1,138 @@
+package org.example.democolauam;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// CSV files of a DiffResult (no OpenCSV): one compiled row writer per row type, cells go
+// straight into the buffered writer without per-row arrays or strings.
+final class CsvExport {
+
+    @FunctionalInterface
+    interface RowWriter<T> {
+        void write(T row, Writer out) throws IOException;
+    }
+
+    private CsvExport() {
+    }
+
+    static void csvUsers(OutputStream out, List<DiffResult.UserChange> rows) throws IOException {
+        csvFromRows(out, new String[]{"UserID", "Name"}, rows, (r, w) -> {
+            cell(w, r.userId);
+            w.write(',');
+            cell(w, r.name);
+        });
+    }
+
+    static void csvUserChanges(OutputStream out, List<DiffResult.UserFieldChange> rows) throws IOException {
+        csvFromRows(out, new String[]{"UserID", "Name", "Field", "OldValue", "NewValue"}, rows, (r, w) -> {
+            cell(w, r.userId);
+            w.write(',');
+            cell(w, r.name);
+            w.write(',');
+            cell(w, r.field);
+            w.write(',');
+            cell(w, r.oldValue);
+            w.write(',');
+            cell(w, r.newValue);
+        });
+    }
+
+    static void csvEnt(OutputStream out, List<DiffResult.EntChange> rows) throws IOException {
+        csvFromRows(out, new String[]{"UserID", "Name", "Application", "Role"}, rows, (r, w) -> {
+            cell(w, r.userId);
+            w.write(',');
+            cell(w, r.name);
+            w.write(',');
+            cell(w, r.app);
+            w.write(',');
+            cell(w, r.role);
+        });
+    }
+
+    // N-way presence: one "x" column per source
+    static void csvUserPresence(OutputStream out, List<String> sources, List<NWayResult.UserPresence> rows) throws IOException {
+        csvFromRows(out, withSources(new String[]{"UserID", "Name"}, sources), rows, (r, w) -> {
+            cell(w, r.userId);
+            w.write(',');
+            cell(w, r.name);
+            marks(w, r.sources, sources.size());
+        });
+    }
+
+    static void csvEntPresence(OutputStream out, List<String> sources, List<NWayResult.EntPresence> rows) throws IOException {
+        csvFromRows(out, withSources(new String[]{"UserID", "Name", "Application", "Role"}, sources), rows, (r, w) -> {
+            cell(w, r.userId);
+            w.write(',');
+            cell(w, r.name);
+            w.write(',');
+            cell(w, r.app);
+            w.write(',');
+            cell(w, r.role);
+            marks(w, r.sources, sources.size());
+        });
+    }
+
+    private static String[] withSources(String[] header, List<String> sources) {
+        String[] h = Arrays.copyOf(header, header.length + sources.size());
+        for (int i = 0; i < sources.size(); i++) h[header.length + i] = sources.get(i);
+        return h;
+    }
+
+    private static void marks(Writer w, long mask, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            w.write(',');
+            if ((mask & (1L << i)) != 0) w.write('x');
+        }
+    }
+
+    // Rough heap held by an export until it is written: the rows plus ~80 bytes of strings each
+    static long estimateBytes(List<?> rows) {
+        return 64 + rows.size() * 80L;
+    }
+
+    static <T> void csvFromRows(OutputStream target, String[] header, List<T> rows, RowWriter<T> row) throws IOException {
+        // not closed: the target belongs to the caller (e.g. the servlet response)
+        Writer out = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 1 << 16);
+
+        for (int i = 0; i < header.length; i++) {
+            if (i > 0) out.write(',');
+            cell(out, header[i]);
+        }
+        out.write('\n');
+
+        for (T r : rows) {
+            row.write(r, out);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    static void cell(Writer out, String s) throws IOException {
+        if (s == null) return;
+        if (!needsQuotes(s)) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+}
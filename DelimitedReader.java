@@ -0,0 +1,150 @@
+package org.example.democolauam;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a CSV/TSV export as one "sheet" for a SheetRowHandler. RFC 4180 quoting ("" inside
+// quotes, line breaks in quoted cells), LF / CRLF / CR line ends, UTF-8 with or without BOM.
+// Unquoted cells are cut straight out of the char buffer, so a cell costs one String.
+final class DelimitedReader {
+
+    private static final int BUFFER = 1 << 16;
+
+    private DelimitedReader() {
+    }
+
+    static void read(Path file, char delimiter, String sheetName, SheetRowHandler handler) throws IOException {
+        try (Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            read(in, delimiter, sheetName, handler);
+        }
+    }
+
+    static void read(Reader in, char delimiter, String sheetName, SheetRowHandler handler) throws IOException {
+        handler.startSheet(0, sheetName);
+        new Tokenizer(delimiter, handler).run(in);
+        handler.endSheet();
+    }
+
+    private static final class Tokenizer {
+        private final char delimiter;
+        private final SheetRowHandler handler;
+
+        private final char[] buf = new char[BUFFER];
+        // the current cell: chars copied so far plus a pending run of buf[runStart, i)
+        private final StringBuilder spill = new StringBuilder(64);
+        private int runStart = -1;
+        private boolean quoted;
+        private boolean afterQuote;
+        private boolean skipLf;
+
+        private final List<String> cells = new ArrayList<>();
+        private String[] row = new String[0];
+        private int rowNum;
+
+        Tokenizer(char delimiter, SheetRowHandler handler) {
+            this.delimiter = delimiter;
+            this.handler = handler;
+        }
+
+        void run(Reader in) throws IOException {
+            boolean first = true;
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                int i = 0;
+                if (first && n > 0) {
+                    first = false;
+                    if (buf[0] == '\uFEFF') i = 1;
+                }
+                for (; i < n; i++) {
+                    char c = buf[i];
+                    if (skipLf) {
+                        skipLf = false;
+                        if (c == '\n') continue;
+                    }
+
+                    if (quoted) {
+                        if (c == '"') {
+                            flushRun(i);
+                            quoted = false;
+                            afterQuote = true;
+                        } else if (runStart < 0) {
+                            runStart = i;
+                        }
+                        continue;
+                    }
+
+                    if (c == '"') {
+                        if (afterQuote) {
+                            // "" inside a quoted cell: this quote is a literal and the cell goes on
+                            runStart = i;
+                            quoted = true;
+                            afterQuote = false;
+                        } else if (runStart < 0 && spill.isEmpty()) {
+                            quoted = true;
+                        } else if (runStart < 0) {
+                            runStart = i;
+                        }
+                        continue;
+                    }
+                    afterQuote = false;
+
+                    if (c == delimiter) {
+                        cells.add(endCell(i));
+                    } else if (c == '\n' || c == '\r') {
+                        cells.add(endCell(i));
+                        endRow();
+                        skipLf = c == '\r';
+                    } else if (runStart < 0) {
+                        runStart = i;
+                    }
+                }
+                // a cell running past the buffer end continues in the next fill
+                flushRun(n);
+            }
+
+            if (!spill.isEmpty() || !cells.isEmpty() || afterQuote) {
+                cells.add(endCell(0));
+                endRow();
+            }
+        }
+
+        private void flushRun(int end) {
+            if (runStart >= 0) {
+                spill.append(buf, runStart, end - runStart);
+                runStart = -1;
+            }
+        }
+
+        private String endCell(int end) {
+            String s;
+            if (spill.isEmpty()) {
+                s = runStart < 0 ? "" : new String(buf, runStart, end - runStart);
+            } else {
+                flushRun(end);
+                s = spill.toString();
+                spill.setLength(0);
+            }
+            runStart = -1;
+            afterQuote = false;
+            return s;
+        }
+
+        // blank lines keep their row number but are not passed on, like empty sheet rows
+        private void endRow() {
+            int r = rowNum++;
+            if (cells.size() == 1 && cells.get(0).isEmpty()) {
+                cells.clear();
+                return;
+            }
+            if (row.length != cells.size()) row = new String[cells.size()];
+            handler.row(r, cells.toArray(row));
+            cells.clear();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.democolauam;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DelimitedReaderTests {
+
+    @Test
+    void plainCells() throws IOException {
+        assertEquals(List.of(
+                List.of("0", "userId", "name"),
+                List.of("1", "u1", "Ann")
+        ), rows("userId,name\nu1,Ann\n", ','));
+    }
+
+    @Test
+    void quotedDelimiterAndEscapedQuotes() throws IOException {
+        assertEquals(List.of(
+                List.of("0", "a,b", "say \"hi\"", ""),
+                List.of("1", "\"", "x")
+        ), rows("\"a,b\",\"say \"\"hi\"\"\",\"\"\n\"\"\"\",x\n", ','));
+    }
+
+    @Test
+    void lineBreaksInsideQuotes() throws IOException {
+        assertEquals(List.of(
+                List.of("0", "line1\nline2", "b"),
+                List.of("1", "c\r\nd", "e")
+        ), rows("\"line1\nline2\",b\n\"c\r\nd\",e", ','));
+    }
+
+    @Test
+    void lfCrlfAndCrLineEnds() throws IOException {
+        List<List<String>> expected = List.of(List.of("0", "a", "b"), List.of("1", "c", "d"), List.of("2", "e", "f"));
+        assertEquals(expected, rows("a\tb\nc\td\r\ne\tf", '\t'));
+        assertEquals(expected, rows("a\tb\r\nc\td\r\ne\tf\r\n", '\t'));
+        assertEquals(expected, rows("a\tb\rc\td\re\tf\r", '\t'));
+    }
+
+    @Test
+    void blankLinesKeepTheirRowNumber() throws IOException {
+        assertEquals(List.of(List.of("0", "a"), List.of("2", "b")), rows("a\n\nb\n", ','));
+    }
+
+    @Test
+    void byteOrderMarkIsDropped() throws IOException {
+        assertEquals(List.of(List.of("0", "userId", "name")), rows("\uFEFFuserId,name\n", ','));
+    }
+
+    @Test
+    void missingTrailingNewlineAndEmptyLastCell() throws IOException {
+        assertEquals(List.of(List.of("0", "a", "")), rows("a,", ','));
+        assertEquals(List.of(List.of("0", "a", "")), rows("a,\"\"", ','));
+    }
+
+    @Test
+    void tokensSplitAcrossReads() throws IOException {
+        // one char per read: every quote pair, "" escape and CRLF straddles a buffer refill
+        String csv = "\uFEFF\"a,b\",\"say \"\"hi\"\"\"\r\n\"x\r\ny\",plain\rlast,\"\"\"\"";
+        List<List<String>> expected = List.of(
+                List.of("0", "a,b", "say \"hi\""),
+                List.of("1", "x\r\ny", "plain"),
+                List.of("2", "last", "\""));
+        assertEquals(expected, rows(csv, ','));
+        assertEquals(expected, rows(new ChunkedReader(csv, 1), ','));
+        assertEquals(expected, rows(new ChunkedReader(csv, 3), ','));
+    }
+
+    @Test
+    void cellsLongerThanTheBuffer() throws IOException {
+        String longCell = "x".repeat(200_000);
+        String csv = "a," + longCell + "\n\"" + longCell + "\"\"\",b\n";
+        assertEquals(List.of(
+                List.of("0", "a", longCell),
+                List.of("1", longCell + "\"", "b")
+        ), rows(csv, ','));
+    }
+
+    private static List<List<String>> rows(String csv, char delimiter) throws IOException {
+        return rows(new StringReader(csv), delimiter);
+    }
+
+    // each row as [rowNum, cells...]; the reader reuses the cells array, so it is copied
+    private static List<List<String>> rows(Reader in, char delimiter) throws IOException {
+        List<List<String>> out = new ArrayList<>();
+        DelimitedReader.read(in, delimiter, "sheet", new SheetRowHandler() {
+            @Override
+            public void startSheet(int sheetIndex, String sheetName) {
+                assertEquals("sheet", sheetName);
+            }
+
+            @Override
+            public void row(int rowNum, String[] cells) {
+                List<String> row = new ArrayList<>();
+                row.add(Integer.toString(rowNum));
+                row.addAll(Arrays.asList(cells));
+                out.add(row);
+            }
+
+            @Override
+            public void endSheet() {
+            }
+        });
+        return out;
+    }
+
+    // hands out at most chunk chars per read
+    private static final class ChunkedReader extends Reader {
+        private final String s;
+        private final int chunk;
+        private int pos;
+
+        ChunkedReader(String s, int chunk) {
+            this.s = s;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos >= s.length()) return -1;
+            int n = Math.min(Math.min(len, chunk), s.length() - pos);
+            s.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
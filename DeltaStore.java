@@ -0,0 +1,200 @@
+package org.example.democolauam;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+// One stored DiffResult per review period (<to>.delta, "what changed since <from>"). Deltas link
+// back to the previous period, so a range is the chain walked from its end to its start and its
+// net change is DiffService.compose over that chain; no full export is loaded.
+@Component
+public class DeltaStore {
+
+    public record Delta(String from, String to, DiffResult result) {}
+
+    public record Info(String from, String to, int changes) {}
+
+    private static final int MAGIC = 0x4152444C; // "ARDL"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".delta";
+
+    private final Path dir;
+
+    public DeltaStore(@Value("${delta.dir:deltas}") String dir) {
+        this.dir = Path.of(dir);
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Delta directory not usable: " + e.getMessage(), e);
+        }
+    }
+
+    // period ids follow the snapshot id rules; saving a period again replaces its delta
+    public void save(String from, String to, DiffResult res) {
+        if (!SnapshotStore.isValidId(from)) throw new IllegalArgumentException("Invalid period: " + from);
+        Path target = file(to);
+
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, "delta-", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, from);
+                writeString(out, to);
+                writeUsers(out, res.usersAdded);
+                writeUsers(out, res.usersRemoved);
+                out.writeInt(res.userFieldChanges.size());
+                for (DiffResult.UserFieldChange c : res.userFieldChanges) {
+                    writeString(out, c.userId);
+                    writeString(out, c.name);
+                    writeString(out, c.field);
+                    writeString(out, c.oldValue);
+                    writeString(out, c.newValue);
+                }
+                writeEnts(out, res.entAdded);
+                writeEnts(out, res.entRemoved);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new UncheckedIOException("Delta write failed: " + e.getMessage(), e);
+        }
+    }
+
+    // undoes a save whose period snapshot could not be written
+    public void delete(String to) {
+        deleteQuietly(file(to));
+    }
+
+    public Delta load(String to) {
+        Path f = file(to);
+        if (!Files.isRegularFile(f)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IllegalStateException("Not a delta file: " + to);
+            int version = in.readInt();
+            if (version != VERSION) throw new IllegalStateException("Unsupported delta version " + version + ": " + to);
+
+            String from = readString(in);
+            String stored = readString(in);
+            DiffResult res = new DiffResult();
+            readUsers(in, res.usersAdded);
+            readUsers(in, res.usersRemoved);
+            for (int n = in.readInt(); n > 0; n--) {
+                res.userFieldChanges.add(new DiffResult.UserFieldChange(
+                        readString(in), readString(in), readString(in), readString(in), readString(in)));
+            }
+            readEnts(in, res.entAdded);
+            readEnts(in, res.entRemoved);
+            return new Delta(from, stored, res);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Delta read failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Deltas covering (from, to], oldest first
+    public List<DiffResult> chain(String from, String to) {
+        List<DiffResult> out = new ArrayList<>();
+        String cur = to;
+        while (!cur.equals(from)) {
+            Delta d = load(cur);
+            // every hop needs a stored delta; the size guard stops a cycle of bad links
+            if (d == null || out.size() > 10_000) {
+                throw new IllegalArgumentException("No delta chain from " + from + " to " + to + " (missing " + cur + ")");
+            }
+            out.add(d.result());
+            cur = d.from();
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    public List<Info> list() {
+        List<Info> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                String name = f.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) continue;
+                try {
+                    Delta d = load(name.substring(0, name.length() - SUFFIX.length()));
+                    DiffResult r = d.result();
+                    out.add(new Info(d.from(), d.to(), r.usersAdded.size() + r.usersRemoved.size()
+                            + r.userFieldChanges.size() + r.entAdded.size() + r.entRemoved.size()));
+                } catch (RuntimeException ignored) {
+                    // unreadable or foreign file, not listed
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Delta listing failed: " + e.getMessage(), e);
+        }
+        out.sort((a, b) -> a.to().compareTo(b.to()));
+        return out;
+    }
+
+    private Path file(String period) {
+        if (!SnapshotStore.isValidId(period)) {
+            throw new IllegalArgumentException("Invalid period: " + period);
+        }
+        return dir.resolve(period + SUFFIX);
+    }
+
+    private static void writeUsers(DataOutputStream out, List<DiffResult.UserChange> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (DiffResult.UserChange c : rows) {
+            writeString(out, c.userId);
+            writeString(out, c.name);
+        }
+    }
+
+    private static void readUsers(DataInputStream in, List<DiffResult.UserChange> rows) throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            rows.add(new DiffResult.UserChange(readString(in), readString(in)));
+        }
+    }
+
+    private static void writeEnts(DataOutputStream out, List<DiffResult.EntChange> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (DiffResult.EntChange c : rows) {
+            writeString(out, c.userId);
+            writeString(out, c.name);
+            writeString(out, c.app);
+            writeString(out, c.role);
+        }
+    }
+
+    private static void readEnts(DataInputStream in, List<DiffResult.EntChange> rows) throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            rows.add(new DiffResult.EntChange(readString(in), readString(in), readString(in), readString(in)));
+        }
+    }
+
+    // length-prefixed UTF-8, same as the external sort runs
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) { }
+    }
+}
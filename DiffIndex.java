@@ -0,0 +1,177 @@
+package org.example.democolauam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Secondary indexes over a DiffResult: for each list, the row positions of every userId (and of
+// every app and role for the entitlement lists), in list order. A filtered page walks the
+// shortest matching posting list and checks the other filters on the row itself. Keys and filter
+// values are EntKey.fold-ed, so filters match case-insensitively, the way the diff joins rows.
+final class DiffIndex {
+
+    // the five lists, by their URL name
+    enum Kind {
+        USERS_ADDED("users-added", "Users Added", false),
+        USERS_REMOVED("users-removed", "Users Removed", false),
+        USER_CHANGES("user-changes", "User Field Changes", false),
+        ENT_ADDED("entitlements-added", "Entitlements Added", true),
+        ENT_REMOVED("entitlements-removed", "Entitlements Removed", true);
+
+        final String slug;
+        final String title;
+        // app/role filters apply
+        final boolean entitlements;
+
+        Kind(String slug, String title, boolean entitlements) {
+            this.slug = slug;
+            this.title = title;
+            this.entitlements = entitlements;
+        }
+
+        static Kind of(String slug) {
+            for (Kind k : values()) {
+                if (k.slug.equals(slug)) return k;
+            }
+            return null;
+        }
+    }
+
+    // null or blank: no filter; values are normalized like parsed cells, then folded
+    record Filter(String app, String role, String userId) {
+        Filter {
+            app = blankToNull(app);
+            role = blankToNull(role);
+            userId = blankToNull(userId);
+        }
+
+        private static String blankToNull(String s) {
+            if (s == null) return null;
+            s = EntKey.fold(ExcelParser.norm(s));
+            return s.isEmpty() ? null : s;
+        }
+    }
+
+    record Page(String kind, int total, int offset, int limit, List<?> rows) {}
+
+    private static final int[] NONE = new int[0];
+
+    private final DiffResult res;
+    private final Map<Kind, Map<String, int[]>> byUser = new HashMap<>();
+    private final Map<Kind, Map<String, int[]>> byApp = new HashMap<>();
+    private final Map<Kind, Map<String, int[]>> byRole = new HashMap<>();
+
+    DiffIndex(DiffResult res) {
+        this.res = res;
+        byUser.put(Kind.USERS_ADDED, postings(res.usersAdded, c -> c.userId));
+        byUser.put(Kind.USERS_REMOVED, postings(res.usersRemoved, c -> c.userId));
+        byUser.put(Kind.USER_CHANGES, postings(res.userFieldChanges, c -> c.userId));
+        for (Kind k : List.of(Kind.ENT_ADDED, Kind.ENT_REMOVED)) {
+            List<DiffResult.EntChange> rows = rows(k);
+            byUser.put(k, postings(rows, c -> c.userId));
+            byApp.put(k, postings(rows, c -> c.app));
+            byRole.put(k, postings(rows, c -> c.role));
+        }
+    }
+
+    // rough heap of the posting lists: the ints, plus ~64 bytes of map entry and array header per key
+    long estimateBytes() {
+        long bytes = 0;
+        for (Map<Kind, Map<String, int[]>> byKind : List.of(byUser, byApp, byRole)) {
+            for (Map<String, int[]> lists : byKind.values()) {
+                for (int[] rows : lists.values()) bytes += 64 + 4L * rows.length;
+            }
+        }
+        return bytes;
+    }
+
+    DiffResult result() {
+        return res;
+    }
+
+    int size(Kind kind) {
+        return rows(kind).size();
+    }
+
+    // IllegalArgumentException for app/role on a user list
+    Page query(Kind kind, Filter filter, int offset, int limit) {
+        if (!kind.entitlements && (filter.app() != null || filter.role() != null)) {
+            throw new IllegalArgumentException("app and role only filter the entitlement lists");
+        }
+        List<?> rows = rows(kind);
+        offset = Math.max(0, offset);
+
+        // no filter: the list itself is the answer
+        if (filter.userId() == null && filter.app() == null && filter.role() == null) {
+            int from = Math.min(offset, rows.size());
+            return new Page(kind.slug, rows.size(), offset, limit, rows.subList(from, Math.min(rows.size(), from + limit)));
+        }
+
+        int[] shortest = null;
+        if (filter.userId() != null) shortest = shorter(shortest, byUser.get(kind).getOrDefault(filter.userId(), NONE));
+        if (filter.app() != null) shortest = shorter(shortest, byApp.get(kind).getOrDefault(filter.app(), NONE));
+        if (filter.role() != null) shortest = shorter(shortest, byRole.get(kind).getOrDefault(filter.role(), NONE));
+
+        List<Object> page = new ArrayList<>(Math.min(limit, shortest.length));
+        int total = 0;
+        for (int i : shortest) {
+            Object row = rows.get(i);
+            if (!matches(row, filter)) continue;
+            if (total >= offset && page.size() < limit) page.add(row);
+            total++;
+        }
+        return new Page(kind.slug, total, offset, limit, page);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> rows(Kind kind) {
+        return (List<T>) switch (kind) {
+            case USERS_ADDED -> res.usersAdded;
+            case USERS_REMOVED -> res.usersRemoved;
+            case USER_CHANGES -> res.userFieldChanges;
+            case ENT_ADDED -> res.entAdded;
+            case ENT_REMOVED -> res.entRemoved;
+        };
+    }
+
+    private static int[] shorter(int[] a, int[] b) {
+        return a == null || b.length < a.length ? b : a;
+    }
+
+    private static boolean matches(Object row, Filter f) {
+        String userId, app = null, role = null;
+        if (row instanceof DiffResult.EntChange c) {
+            userId = c.userId;
+            app = c.app;
+            role = c.role;
+        } else if (row instanceof DiffResult.UserFieldChange c) {
+            userId = c.userId;
+        } else {
+            userId = ((DiffResult.UserChange) row).userId;
+        }
+        return (f.userId() == null || f.userId().equals(EntKey.fold(userId)))
+                && (f.app() == null || f.app().equals(EntKey.fold(app)))
+                && (f.role() == null || f.role().equals(EntKey.fold(role)));
+    }
+
+    // Row positions per folded key, ascending. Two passes (count, then fill) so every posting list
+    // is allocated once at its final size; each distinct value is folded once.
+    private static <T> Map<String, int[]> postings(List<T> rows, Function<T, String> value) {
+        Map<String, String> folded = new HashMap<>();
+        Function<T, String> key = row -> folded.computeIfAbsent(value.apply(row), EntKey::fold);
+        Map<String, int[]> counts = new HashMap<>();
+        for (T row : rows) counts.computeIfAbsent(key.apply(row), k -> new int[1])[0]++;
+
+        Map<String, int[]> lists = new HashMap<>(counts.size() * 4 / 3 + 1);
+        counts.forEach((k, n) -> lists.put(k, new int[n[0]]));
+        // counts now serve as the fill position of each list
+        counts.values().forEach(n -> n[0] = 0);
+        for (int i = 0; i < rows.size(); i++) {
+            String k = key.apply(rows.get(i));
+            lists.get(k)[counts.get(k)[0]++] = i;
+        }
+        return lists;
+    }
+}
@@ -3,7 +3,7 @@ package org.example.democolauam;
 import java.util.ArrayList;
 import java.util.List;
 
-public class DiffResult {
+public class DiffResult implements DiffService.DiffSink {
 
     public final List<UserChange> usersAdded = new ArrayList<>();
     public final List<UserChange> usersRemoved = new ArrayList<>();
@@ -13,6 +13,48 @@ public class DiffResult {
     public final List<EntChange> entAdded = new ArrayList<>();
     public final List<EntChange> entRemoved = new ArrayList<>();
 
+    @Override
+    public void userAdded(UserChange c) {
+        usersAdded.add(c);
+    }
+
+    @Override
+    public void userRemoved(UserChange c) {
+        usersRemoved.add(c);
+    }
+
+    @Override
+    public void fieldChanged(UserFieldChange c) {
+        userFieldChanges.add(c);
+    }
+
+    @Override
+    public void entAdded(EntChange c) {
+        entAdded.add(c);
+    }
+
+    @Override
+    public void entRemoved(EntChange c) {
+        entRemoved.add(c);
+    }
+
+    // Hands the rows on in list order, one kind after the other
+    public void replay(DiffService.DiffSink sink) {
+        usersAdded.forEach(sink::userAdded);
+        usersRemoved.forEach(sink::userRemoved);
+        userFieldChanges.forEach(sink::fieldChanged);
+        entAdded.forEach(sink::entAdded);
+        entRemoved.forEach(sink::entRemoved);
+    }
+
+    void clear() {
+        usersAdded.clear();
+        usersRemoved.clear();
+        userFieldChanges.clear();
+        entAdded.clear();
+        entRemoved.clear();
+    }
+
     public static class UserChange {
         public final String userId;
         public final String name;
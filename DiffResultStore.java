@@ -0,0 +1,114 @@
+package org.example.democolauam;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compare results kept under a token for browsing (see DiffIndex), next to their CSV exports.
+// The DiffResult is the one the exports render from, not a copy; its indexes are built on the
+// first query, so a compare nobody browses pays nothing. Bounded by count, age and estimated
+// heap: once the exports have spilled to disk this store is what keeps the rows alive.
+@Component
+public class DiffResultStore {
+
+    private static final class Entry {
+        final DiffResult result;
+        final Instant created = Instant.now();
+        final long resultBytes;
+        // guarded by the entry: an index built after removal is never counted
+        private DiffIndex index;
+        private long indexBytes;
+        private boolean removed;
+
+        Entry(DiffResult result, long resultBytes) {
+            this.result = result;
+            this.resultBytes = resultBytes;
+        }
+    }
+
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Duration retention;
+
+    public DiffResultStore(@Value("${results.max-entries:8}") int maxEntries,
+                           @Value("${results.max-mb:256}") long maxMb,
+                           @Value("${results.retention-minutes:30}") long retentionMinutes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxMb * 1024 * 1024;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    // null if the result alone is over the byte budget: it is not kept for browsing
+    public String put(DiffResult result) {
+        purge();
+        long estimate = estimateBytes(result);
+        if (estimate > maxBytes) return null;
+
+        String token = UUID.randomUUID().toString().replace("-", "");
+        bytes.addAndGet(estimate);
+        results.put(token, new Entry(result, estimate));
+        trim();
+        return token;
+    }
+
+    // null if unknown or expired
+    DiffIndex get(String token) {
+        purge();
+        Entry e = results.get(token);
+        if (e == null) return null;
+
+        DiffIndex index;
+        synchronized (e) {
+            if (e.index == null) {
+                e.index = new DiffIndex(e.result);
+                if (!e.removed) {
+                    e.indexBytes = e.index.estimateBytes();
+                    bytes.addAndGet(e.indexBytes);
+                }
+            }
+            index = e.index;
+        }
+        trim();
+        return index;
+    }
+
+    // the rows of all five lists, as the exports estimate them
+    private static long estimateBytes(DiffResult r) {
+        return CsvExport.estimateBytes(r.usersAdded) + CsvExport.estimateBytes(r.usersRemoved)
+                + CsvExport.estimateBytes(r.userFieldChanges)
+                + CsvExport.estimateBytes(r.entAdded) + CsvExport.estimateBytes(r.entRemoved);
+    }
+
+    // over either limit the oldest results go first
+    private void trim() {
+        while (results.size() > maxEntries || bytes.get() > maxBytes) {
+            var oldest = results.entrySet().stream().min(Comparator.comparing(x -> x.getValue().created));
+            if (oldest.isEmpty()) return;
+            remove(oldest.get().getKey(), oldest.get().getValue());
+        }
+    }
+
+    private void purge() {
+        Instant cutoff = Instant.now().minus(retention);
+        results.forEach((token, e) -> {
+            if (e.created.isBefore(cutoff)) remove(token, e);
+        });
+    }
+
+    private void remove(String token, Entry e) {
+        if (!results.remove(token, e)) return;
+        synchronized (e) {
+            e.removed = true;
+            bytes.addAndGet(-(e.resultBytes + e.indexBytes));
+        }
+    }
+}
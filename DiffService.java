@@ -1,39 +1,241 @@
 package org.example.democolauam;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 @Service
 public class DiffService {
 
+    // The maps one side of the diff needs, split by userId hash into partitions that are diffed
+    // independently; built per side so the old file can be indexed while the new one is still
+    // being parsed.
+    public record Side(List<Partition> parts) {}
+
+    public record Partition(Map<String, User> users, Map<EntKey, EntitlementRecord> ents) {}
+
+    private static final Comparator<DiffResult.UserChange> USER_ORDER = Comparator.comparing(a -> safe(a.userId));
+    private static final Comparator<DiffResult.UserFieldChange> FIELD_ORDER = Comparator.comparing(a -> safe(a.userId));
+    private static final Comparator<DiffResult.EntChange> ENT_ORDER =
+            (a, b) -> compareJoined(a.userId, a.app, a.role, b.userId, b.app, b.role);
+
+    private final UserAttributes attributes;
+    private final int partitions;
+
+    public DiffService() {
+        this(UserAttributes.NONE, 0);
+    }
+
+    // partitions: 0 = four per core (none on a single core), 1 = the single-threaded diff
+    @Autowired
+    public DiffService(UserAttributes attributes, @Value("${diff.partitions:0}") int partitions) {
+        this.attributes = attributes;
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.partitions = partitions > 0 ? partitions : cores > 1 ? 4 * cores : 1;
+    }
+
     public DiffResult compare(List<EntitlementRecord> oldRecs, List<EntitlementRecord> newRecs) {
+        return compare(index(oldRecs), newRecs);
+    }
+
+    public Side index(List<EntitlementRecord> recs) {
+        if (partitions == 1) return new Side(List.of(partition(recs)));
+
+        // bucket the records by partition, keeping their order within each (first/last-wins rules)
+        int[] part = new int[recs.size()];
+        IntStream.range(0, part.length).parallel().forEach(i -> part[i] = partitionOf(recs.get(i).key().userHash()));
+        int[] start = new int[partitions + 1];
+        for (int p : part) start[p + 1]++;
+        for (int p = 0; p < partitions; p++) start[p + 1] += start[p];
+        List<List<EntitlementRecord>> buckets = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) buckets.add(new ArrayList<>(start[p + 1] - start[p]));
+        for (int i = 0; i < part.length; i++) buckets.get(part[i]).add(recs.get(i));
+
+        return new Side(IntStream.range(0, partitions).parallel()
+                .mapToObj(p -> partition(buckets.get(p)))
+                .toList());
+    }
+
+    // Each partition is diffed and sorted on the common fork-join pool, then the sorted pieces
+    // are merged: same rows in the same order as one diff over the whole population.
+    public DiffResult compare(Side old, List<EntitlementRecord> newRecs) {
+        Side cur = index(newRecs);
+        List<DiffResult> pieces = IntStream.range(0, old.parts().size()).parallel()
+                .mapToObj(p -> {
+                    DiffResult r = new DiffResult();
+                    diffInto(old.parts().get(p), cur.parts().get(p), r);
+                    sort(r);
+                    return r;
+                })
+                .toList();
+        return pieces.size() == 1 ? pieces.get(0) : merge(pieces);
+    }
+
+    private Partition partition(List<EntitlementRecord> recs) {
+        // Map userId -> name and attributes (take first non-blank), key -> record
+        return new Partition(buildUserMap(recs), buildEntMap(recs));
+    }
+
+    // by the (already cached) key's userId hash, so no extra pass over the ids
+    private int partitionOf(long h) {
+        return Math.floorMod((int) (h ^ (h >>> 32)), partitions);
+    }
+
+    // Producer of raw (not deduped) records, e.g. a streaming parse
+    public interface RecordSource {
+        void forEach(Consumer<EntitlementRecord> sink);
+    }
+
+    // Consumer of the diff's rows as they are found; DiffResult is the collecting one
+    public interface DiffSink {
+        void userAdded(DiffResult.UserChange c);
+
+        void userRemoved(DiffResult.UserChange c);
+
+        void fieldChanged(DiffResult.UserFieldChange c);
+
+        void entAdded(DiffResult.EntChange c);
+
+        void entRemoved(DiffResult.EntChange c);
+    }
+
+    // Out-of-core mode: both inputs are sorted by userId into disk-spilled runs and the diff is a
+    // single merge pass, one user at a time. Heap stays around the budget whatever the input size;
+    // only the changes themselves are kept.
+    public DiffResult compareExternal(RecordSource oldSrc, RecordSource newSrc, long memoryBudgetBytes) {
         DiffResult res = new DiffResult();
+        compareExternal(oldSrc, newSrc, memoryBudgetBytes, res);
+        sort(res);
+        return res;
+    }
+
+    // Same merge pass, but every user's changes go to out as soon as that user is merged (sorted
+    // within the user; users come in folded-userId order), so nothing accumulates
+    public void compareExternal(RecordSource oldSrc, RecordSource newSrc, long memoryBudgetBytes, DiffSink out) {
+        DiffResult group = new DiffResult();
+
+        try (ExternalSorter oldSorted = new ExternalSorter(memoryBudgetBytes / 2);
+             ExternalSorter newSorted = new ExternalSorter(memoryBudgetBytes / 2)) {
+            oldSrc.forEach(oldSorted);
+            oldSorted.finish();
+            newSrc.forEach(newSorted);
+            newSorted.finish();
+
+            Iterator<ExternalSorter.Item> a = oldSorted.iterator();
+            Iterator<ExternalSorter.Item> b = newSorted.iterator();
+            ExternalSorter.Item x = a.hasNext() ? a.next() : null;
+            ExternalSorter.Item y = b.hasNext() ? b.next() : null;
+
+            // every record of a user (case-insensitive) is in one group on each side
+            List<EntitlementRecord> oldGroup = new ArrayList<>();
+            List<EntitlementRecord> newGroup = new ArrayList<>();
+            while (x != null || y != null) {
+                String g = x == null ? y.group() : y == null ? x.group()
+                        : x.group().compareTo(y.group()) <= 0 ? x.group() : y.group();
+
+                oldGroup.clear();
+                newGroup.clear();
+                while (x != null && x.group().equals(g)) {
+                    oldGroup.add(x.rec());
+                    x = a.hasNext() ? a.next() : null;
+                }
+                while (y != null && y.group().equals(g)) {
+                    newGroup.add(y.rec());
+                    y = b.hasNext() ? b.next() : null;
+                }
+
+                group.clear();
+                diffInto(partition(ExcelParser.dedupe(oldGroup)), partition(ExcelParser.dedupe(newGroup)), group);
+                sort(group);
+                group.replay(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("External diff failed: " + e.getMessage(), e);
+        }
+    }
 
-        // Map userId -> name (take first non-blank)
-        Map<String, String> oldUsers = buildUserMap(oldRecs);
-        Map<String, String> newUsers = buildUserMap(newRecs);
+    private void diffInto(Partition old, Partition cur, DiffSink out) {
+        Map<String, User> oldUsers = old.users();
+        Map<String, User> newUsers = cur.users();
 
         // Users added/removed
-        for (String userId : newUsers.keySet()) {
-            if (!oldUsers.containsKey(userId)) {
-                res.usersAdded.add(new DiffResult.UserChange(userId, newUsers.get(userId)));
+        for (Map.Entry<String, User> u : newUsers.entrySet()) {
+            if (!oldUsers.containsKey(u.getKey())) {
+                out.userAdded(new DiffResult.UserChange(u.getKey(), u.getValue().name()));
             }
         }
-        for (String userId : oldUsers.keySet()) {
-            if (!newUsers.containsKey(userId)) {
-                res.usersRemoved.add(new DiffResult.UserChange(userId, oldUsers.get(userId)));
+        for (Map.Entry<String, User> u : oldUsers.entrySet()) {
+            if (!newUsers.containsKey(u.getKey())) {
+                out.userRemoved(new DiffResult.UserChange(u.getKey(), u.getValue().name()));
             }
         }
 
-        // User field changes (Name change)
-        for (String userId : newUsers.keySet()) {
-            if (oldUsers.containsKey(userId)) {
-                String oldName = safe(oldUsers.get(userId));
-                String newName = safe(newUsers.get(userId));
-                if (!oldName.equals(newName) && !(oldName.isBlank() && newName.isBlank())) {
+        // User field changes (Name and the extra attributes); same fingerprint -> nothing to walk
+        for (Map.Entry<String, User> u : newUsers.entrySet()) {
+            User o = oldUsers.get(u.getKey());
+            if (o != null && o.fingerprint != u.getValue().fingerprint) fieldChanges(u.getKey(), o, u.getValue(), out);
+        }
+
+        // Entitlements compare
+        Map<EntKey, EntitlementRecord> oldEnt = old.ents();
+        Map<EntKey, EntitlementRecord> newEnt = cur.ents();
+
+        for (EntKey k : newEnt.keySet()) {
+            if (!oldEnt.containsKey(k)) {
+                EntitlementRecord r = newEnt.get(k);
+                out.entAdded(new DiffResult.EntChange(r.userId, r.name, r.app, r.role));
+            }
+        }
+        for (EntKey k : oldEnt.keySet()) {
+            if (!newEnt.containsKey(k)) {
+                EntitlementRecord r = oldEnt.get(k);
+                out.entRemoved(new DiffResult.EntChange(r.userId, r.name, r.app, r.role));
+            }
+        }
+    }
+
+    private void fieldChanges(String userId, User o, User n, DiffSink out) {
+        String oldName = o.values[0];
+        String newName = n.values[0];
+        String display = newName.isBlank() ? oldName : newName;
+        for (int f = 0; f < n.values.length; f++) {
+            String oldValue = o.values[f];
+            String newValue = n.values[f];
+            if (!oldValue.equals(newValue) && !(oldValue.isBlank() && newValue.isBlank())) {
+                String field = f == 0 ? "Name" : attributes.names().get(f - 1);
+                out.fieldChanged(new DiffResult.UserFieldChange(userId, display, field, oldValue, newValue));
+            }
+        }
+    }
+
+    // Same result as compare(List, List) for the four core columns (the tables carry no extra
+    // user attributes, so only Name is compared per user), but every key lookup is on int ids
+    public DiffResult compare(EntitlementTable oldTab, EntitlementTable newTab) {
+        DiffResult res = new DiffResult();
+        IdSpace ids = new IdSpace(oldTab.dictionary(), newTab.dictionary());
+
+        // userId -> name, both as exact ids (take first non-blank)
+        int[] oldUsers = buildUserIndex(oldTab, ids.exactOld, ids);
+        int[] newUsers = buildUserIndex(newTab, ids.exactNew, ids);
+
+        for (int u = 0; u < newUsers.length; u++) {
+            if (newUsers[u] < 0) continue;
+            if (oldUsers[u] < 0) {
+                res.usersAdded.add(new DiffResult.UserChange(ids.string(u), ids.string(newUsers[u])));
+            } else if (oldUsers[u] != newUsers[u]) {
+                // User field changes (Name change)
+                String oldName = ids.string(oldUsers[u]);
+                String newName = ids.string(newUsers[u]);
+                if (!(oldName.isBlank() && newName.isBlank())) {
                     res.userFieldChanges.add(new DiffResult.UserFieldChange(
-                            userId,
+                            ids.string(u),
                             newName.isBlank() ? oldName : newName,
                             "Name",
                             oldName,
@@ -42,66 +244,387 @@ public class DiffService {
                 }
             }
         }
+        for (int u = 0; u < oldUsers.length; u++) {
+            if (oldUsers[u] >= 0 && newUsers[u] < 0) {
+                res.usersRemoved.add(new DiffResult.UserChange(ids.string(u), ids.string(oldUsers[u])));
+            }
+        }
 
-        // Entitlements compare
-        Map<String, EntitlementRecord> oldEnt = buildEntMap(oldRecs);
-        Map<String, EntitlementRecord> newEnt = buildEntMap(newRecs);
+        // Entitlements compare: (folded user, folded app|role pair) packed into one long
+        LongIntHashMap pairs = new LongIntHashMap(1024);
+        LongIntHashMap oldEnt = buildEntIndex(oldTab, ids.foldOld, pairs);
+        LongIntHashMap newEnt = buildEntIndex(newTab, ids.foldNew, pairs);
 
-        for (String k : newEnt.keySet()) {
-            if (!oldEnt.containsKey(k)) {
-                EntitlementRecord r = newEnt.get(k);
-                res.entAdded.add(new DiffResult.EntChange(r.userId, r.name, r.app, r.role));
+        for (int i = 0; i < newEnt.capacity(); i++) {
+            int row = newEnt.valueAt(i);
+            if (row >= 0 && oldEnt.get(newEnt.keyAt(i)) < 0) res.entAdded.add(entChange(newTab, row));
+        }
+        for (int i = 0; i < oldEnt.capacity(); i++) {
+            int row = oldEnt.valueAt(i);
+            if (row >= 0 && newEnt.get(oldEnt.keyAt(i)) < 0) res.entRemoved.add(entChange(oldTab, row));
+        }
+
+        sort(res);
+        return res;
+    }
+
+    // N-way compare: one shared index over all inputs, each key carries a bitmask of the sources
+    // that contain it, so the cost is one pass over all records instead of N*(N-1) pairwise diffs.
+    // inputs are deduped parser output, at most 64 of them.
+    public NWayResult compareMany(List<String> sources, List<List<EntitlementRecord>> inputs) {
+        if (inputs.isEmpty() || inputs.size() > 64 || sources.size() != inputs.size()) {
+            throw new IllegalArgumentException("Between 1 and 64 named sources are supported");
+        }
+        NWayResult res = new NWayResult(sources);
+
+        // user names: same first non-blank rule as the two-way diff, per source
+        Map<String, Map<String, Long>> names = new HashMap<>();
+        Map<EntKey, NWayResult.EntPresence> ents = new HashMap<>();
+        for (int s = 0; s < inputs.size(); s++) {
+            long bit = 1L << s;
+            for (Map.Entry<String, User> u : buildUserMap(inputs.get(s)).entrySet()) {
+                names.computeIfAbsent(u.getKey(), k -> new HashMap<>(2)).merge(u.getValue().name(), bit, (a, b) -> a | b);
+            }
+            for (EntitlementRecord r : inputs.get(s)) {
+                EntKey key = r.key();
+                if (!key.isComplete()) continue;
+                // the first source's spelling is reported
+                NWayResult.EntPresence p = ents.get(key);
+                if (p == null) ents.put(key, new NWayResult.EntPresence(r.userId, r.name, r.app, r.role, bit));
+                else p.sources |= bit;
             }
         }
-        for (String k : oldEnt.keySet()) {
-            if (!newEnt.containsKey(k)) {
-                EntitlementRecord r = oldEnt.get(k);
-                res.entRemoved.add(new DiffResult.EntChange(r.userId, r.name, r.app, r.role));
+
+        names.forEach((userId, byName) -> byName.forEach((name, mask) ->
+                res.users.add(new NWayResult.UserPresence(userId, name, mask))));
+        res.entitlements.addAll(ents.values());
+
+        res.users.sort(Comparator.comparing((NWayResult.UserPresence a) -> safe(a.userId)).thenComparing(a -> safe(a.name)));
+        res.entitlements.sort(Comparator.comparing(a -> safe(a.userId) + "|" + safe(a.app) + "|" + safe(a.role)));
+        return res;
+    }
+
+    // Net change over consecutive period deltas (oldest first): the same changes as comparing the
+    // first period's old side with the last period's new side, in time proportional to the deltas.
+    // Rows carry the name/spelling of the delta they came from.
+    public DiffResult compose(List<DiffResult> chain) {
+        Map<String, UserNet> users = new LinkedHashMap<>();
+        Map<EntKey, EntNet> ents = new LinkedHashMap<>();
+
+        // within one delta a user / entitlement appears at most once, so only the delta order matters
+        for (DiffResult d : chain) {
+            for (DiffResult.UserChange c : d.usersAdded) {
+                UserNet u = users.computeIfAbsent(c.userId, k -> new UserNet(false));
+                u.atEnd = true;
+                u.value("Name", null, c.name);
+            }
+            for (DiffResult.UserChange c : d.usersRemoved) {
+                UserNet u = users.computeIfAbsent(c.userId, k -> new UserNet(true));
+                u.atEnd = false;
+                u.value("Name", c.name, null);
+            }
+            for (DiffResult.UserFieldChange c : d.userFieldChanges) {
+                UserNet u = users.computeIfAbsent(c.userId, k -> new UserNet(true));
+                u.value(c.field, c.oldValue, c.newValue);
+            }
+            for (DiffResult.EntChange c : d.entAdded) {
+                ents.computeIfAbsent(new EntKey(c.userId, c.app, c.role), k -> new EntNet(c, true)).last(c, true);
+            }
+            for (DiffResult.EntChange c : d.entRemoved) {
+                ents.computeIfAbsent(new EntKey(c.userId, c.app, c.role), k -> new EntNet(c, false)).last(c, false);
+            }
+        }
+
+        DiffResult res = new DiffResult();
+        users.forEach((userId, u) -> {
+            String[] name = u.fields.get("Name");
+            if (!u.atStart && u.atEnd) {
+                res.usersAdded.add(new DiffResult.UserChange(userId, name[1]));
+            } else if (u.atStart && !u.atEnd) {
+                res.usersRemoved.add(new DiffResult.UserChange(userId, name[0]));
+            } else if (u.atStart) {
+                String display = name == null ? "" : safe(name[1]).isBlank() ? safe(name[0]) : safe(name[1]);
+                u.fields.forEach((field, v) -> {
+                    String oldValue = safe(v[0]);
+                    String newValue = safe(v[1]);
+                    if (!oldValue.equals(newValue) && !(oldValue.isBlank() && newValue.isBlank())) {
+                        res.userFieldChanges.add(new DiffResult.UserFieldChange(userId, display, field, oldValue, newValue));
+                    }
+                });
             }
+        });
+        // added then removed (or the reverse) within the range cancels out
+        ents.values().forEach(e -> {
+            if (e.firstAdded && e.lastAdded) res.entAdded.add(e.last);
+            else if (!e.firstAdded && !e.lastAdded) res.entRemoved.add(e.first);
+        });
+
+        sort(res);
+        return res;
+    }
+
+    // Presence at both ends of the range, and per field the value at the start and at the end
+    private static final class UserNet {
+        final boolean atStart;
+        boolean atEnd;
+        final Map<String, String[]> fields = new LinkedHashMap<>();
+
+        UserNet(boolean atStart) {
+            this.atStart = atStart;
+            this.atEnd = atStart;
+        }
+
+        // start: the value before this change (kept from the first change), end: the value after it
+        void value(String field, String start, String end) {
+            String[] v = fields.computeIfAbsent(field, f -> new String[]{start, null});
+            v[1] = end;
+        }
+    }
+
+    private static final class EntNet {
+        final DiffResult.EntChange first;
+        final boolean firstAdded;
+        DiffResult.EntChange last;
+        boolean lastAdded;
+
+        EntNet(DiffResult.EntChange first, boolean firstAdded) {
+            this.first = first;
+            this.firstAdded = firstAdded;
         }
 
+        EntNet last(DiffResult.EntChange c, boolean added) {
+            last = c;
+            lastAdded = added;
+            return this;
+        }
+    }
+
+    private void sort(DiffResult res) {
         // Sorting (stable UI)
-        res.usersAdded.sort(Comparator.comparing(a -> safe(a.userId)));
-        res.usersRemoved.sort(Comparator.comparing(a -> safe(a.userId)));
-        res.userFieldChanges.sort(Comparator.comparing(a -> safe(a.userId)));
-        res.entAdded.sort(Comparator.comparing(a -> safe(a.userId) + "|" + safe(a.app) + "|" + safe(a.role)));
-        res.entRemoved.sort(Comparator.comparing(a -> safe(a.userId) + "|" + safe(a.app) + "|" + safe(a.role)));
+        res.usersAdded.sort(USER_ORDER);
+        res.usersRemoved.sort(USER_ORDER);
+        res.userFieldChanges.sort(FIELD_ORDER);
+        res.entAdded.sort(ENT_ORDER);
+        res.entRemoved.sort(ENT_ORDER);
+    }
 
+    private static DiffResult merge(List<DiffResult> pieces) {
+        DiffResult res = new DiffResult();
+        mergeInto(pieces, r -> r.usersAdded, USER_ORDER, res.usersAdded);
+        mergeInto(pieces, r -> r.usersRemoved, USER_ORDER, res.usersRemoved);
+        mergeInto(pieces, r -> r.userFieldChanges, FIELD_ORDER, res.userFieldChanges);
+        mergeInto(pieces, r -> r.entAdded, ENT_ORDER, res.entAdded);
+        mergeInto(pieces, r -> r.entRemoved, ENT_ORDER, res.entRemoved);
         return res;
     }
 
-    private Map<String, String> buildUserMap(List<EntitlementRecord> recs) {
-        Map<String, String> m = new HashMap<>();
+    // k-way merge of sorted lists; equal rows (one user's field changes) all come from one
+    // partition, so taking the lower partition first on ties keeps the stable-sort order
+    private static <T> void mergeInto(List<DiffResult> pieces, Function<DiffResult, List<T>> list,
+                                      Comparator<T> order, List<T> out) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((x, y) -> {
+            int c = order.compare(list.apply(pieces.get(x[0])).get(x[1]), list.apply(pieces.get(y[0])).get(y[1]));
+            return c != 0 ? c : Integer.compare(x[0], y[0]);
+        });
+        for (int p = 0; p < pieces.size(); p++) {
+            if (!list.apply(pieces.get(p)).isEmpty()) heads.add(new int[]{p, 0});
+        }
+        while (!heads.isEmpty()) {
+            int[] h = heads.poll();
+            List<T> l = list.apply(pieces.get(h[0]));
+            out.add(l.get(h[1]));
+            if (++h[1] < l.size()) heads.add(h);
+        }
+    }
+
+    // Same order as comparing userId + "|" + app + "|" + role, without building the strings
+    private static int compareJoined(String a0, String a1, String a2, String b0, String b1, String b2) {
+        a0 = safe(a0); a1 = safe(a1); a2 = safe(a2);
+        b0 = safe(b0); b1 = safe(b1); b2 = safe(b2);
+        int lenA = a0.length() + a1.length() + a2.length() + 2;
+        int lenB = b0.length() + b1.length() + b2.length() + 2;
+        for (int i = 0, n = Math.min(lenA, lenB); i < n; i++) {
+            char x = joinedAt(a0, a1, a2, i);
+            char y = joinedAt(b0, b1, b2, i);
+            if (x != y) return x - y;
+        }
+        return lenA - lenB;
+    }
+
+    private static char joinedAt(String p0, String p1, String p2, int i) {
+        if (i < p0.length()) return p0.charAt(i);
+        i -= p0.length();
+        if (i-- == 0) return '|';
+        if (i < p1.length()) return p1.charAt(i);
+        i -= p1.length();
+        if (i-- == 0) return '|';
+        return p2.charAt(i);
+    }
+
+    private Map<String, User> buildUserMap(List<EntitlementRecord> recs) {
+        Map<String, User> m = new HashMap<>();
+        int n = attributes.size();
         for (EntitlementRecord r : recs) {
             String id = safe(r.userId);
             if (id.isBlank()) continue;
-            String name = safe(r.name);
-            // keep first non-blank
-            if (!m.containsKey(id) || (m.get(id).isBlank() && !name.isBlank())) {
-                m.put(id, name);
-            }
+            // keep first non-blank, per field
+            User u = m.get(id);
+            if (u == null) m.put(id, new User(r, n));
+            else u.fill(r);
         }
+        for (User u : m.values()) u.seal();
         return m;
     }
 
-    private Map<String, EntitlementRecord> buildEntMap(List<EntitlementRecord> recs) {
-        Map<String, EntitlementRecord> m = new HashMap<>();
+    // One user's name and extra attributes, with a hash over all of them: an unchanged user costs
+    // one long comparison however many columns are configured.
+    public static final class User {
+        // [0] = name, then the UserAttributes columns in order
+        private final String[] values;
+        private int blanks;
+        private long fingerprint;
+
+        User(EntitlementRecord r, int attributes) {
+            values = new String[attributes + 1];
+            values[0] = safe(r.name);
+            for (int a = 0; a < attributes; a++) values[a + 1] = r.attribute(a);
+            for (String v : values) if (v.isBlank()) blanks++;
+        }
+
+        public String name() {
+            return values[0];
+        }
+
+        // later records only fill fields that are still blank
+        void fill(EntitlementRecord r) {
+            if (blanks == 0) return;
+            for (int f = 0; f < values.length; f++) {
+                if (!values[f].isBlank()) continue;
+                String v = f == 0 ? safe(r.name) : r.attribute(f - 1);
+                if (!v.isBlank()) {
+                    values[f] = v;
+                    blanks--;
+                }
+            }
+        }
+
+        // 64-bit FNV-1a over the exact values, with a separator after each field
+        void seal() {
+            long h = 0xcbf29ce484222325L;
+            for (String v : values) {
+                for (int i = 0; i < v.length(); i++) {
+                    h ^= v.charAt(i);
+                    h *= 0x100000001b3L;
+                }
+                h ^= 0x1f;
+                h *= 0x100000001b3L;
+            }
+            fingerprint = h;
+        }
+    }
+
+    private Map<EntKey, EntitlementRecord> buildEntMap(List<EntitlementRecord> recs) {
+        Map<EntKey, EntitlementRecord> m = new HashMap<>();
         for (EntitlementRecord r : recs) {
-            String key = entKey(r);
-            if (key.isBlank()) continue;
+            // unique: userId + app + role, all three required
+            EntKey key = r.key();
+            if (!key.isComplete()) continue;
             // keep last, doesn't matter
             m.put(key, r);
         }
         return m;
     }
 
-    private String entKey(EntitlementRecord r) {
-        // unique: userId + app + role
-        String id = safe(r.userId).trim();
-        String app = safe(r.app).trim();
-        String role = safe(r.role).trim();
-        if (id.isBlank() || app.isBlank() || role.isBlank()) return "";
-        return id.toLowerCase(Locale.ROOT) + "|" + app.toLowerCase(Locale.ROOT) + "|" + role.toLowerCase(Locale.ROOT);
+    private int[] buildUserIndex(EntitlementTable t, int[] exact, IdSpace ids) {
+        int[] m = new int[ids.size()];
+        Arrays.fill(m, -1);
+        for (int i = 0; i < t.size(); i++) {
+            int id = exact[t.userIdAt(i)];
+            if (ids.string(id).isBlank()) continue;
+            int name = exact[t.nameAt(i)];
+            // keep first non-blank
+            if (m[id] < 0 || (ids.string(m[id]).isBlank() && !ids.string(name).isBlank())) {
+                m[id] = name;
+            }
+        }
+        return m;
+    }
+
+    private LongIntHashMap buildEntIndex(EntitlementTable t, int[] fold, LongIntHashMap pairs) {
+        LongIntHashMap m = new LongIntHashMap(t.size());
+        for (int i = 0; i < t.size(); i++) {
+            int id = fold[t.userIdAt(i)];
+            int app = fold[t.appAt(i)];
+            int role = fold[t.roleAt(i)];
+            if (id < 0 || app < 0 || role < 0) continue;
+
+            long pairKey = ((long) app << 32) | role;
+            int pair = pairs.get(pairKey);
+            if (pair < 0) {
+                pair = pairs.size();
+                pairs.put(pairKey, pair);
+            }
+            // keep last, doesn't matter
+            m.put(((long) id << 32) | pair, i);
+        }
+        return m;
+    }
+
+    private DiffResult.EntChange entChange(EntitlementTable t, int row) {
+        StringDictionary d = t.dictionary();
+        return new DiffResult.EntChange(d.get(t.userIdAt(row)), d.get(t.nameAt(row)), d.get(t.appAt(row)), d.get(t.roleAt(row)));
+    }
+
+    // One id space over the two dictionaries: exact ids for userId/name equality,
+    // folded ids (trimmed, lower-case, -1 when blank) for the entitlement key.
+    private static final class IdSpace {
+        final int[] exactOld, exactNew, foldOld, foldNew;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> exact = new HashMap<>();
+        private final Map<String, Integer> folded = new HashMap<>();
+
+        IdSpace(StringDictionary oldDict, StringDictionary newDict) {
+            exactOld = new int[oldDict.size()];
+            foldOld = new int[oldDict.size()];
+            map(oldDict, exactOld, foldOld);
+            if (newDict == oldDict) {
+                exactNew = exactOld;
+                foldNew = foldOld;
+            } else {
+                exactNew = new int[newDict.size()];
+                foldNew = new int[newDict.size()];
+                map(newDict, exactNew, foldNew);
+            }
+        }
+
+        private void map(StringDictionary d, int[] exactIds, int[] foldIds) {
+            for (int i = 0; i < d.size(); i++) {
+                String s = d.get(i);
+                Integer e = exact.get(s);
+                if (e == null) {
+                    e = strings.size();
+                    exact.put(s, e);
+                    strings.add(s);
+                }
+                exactIds[i] = e;
+
+                // same folding as EntKey, once per distinct string
+                String f = EntKey.fold(s);
+                if (f.isBlank()) {
+                    foldIds[i] = -1;
+                } else {
+                    foldIds[i] = folded.computeIfAbsent(f, k -> folded.size());
+                }
+            }
+        }
+
+        String string(int exactId) {
+            return strings.get(exactId);
+        }
+
+        int size() {
+            return strings.size();
+        }
     }
 
     private static String safe(String s) {
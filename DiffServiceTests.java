@@ -0,0 +1,85 @@
+package org.example.democolauam;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DiffServiceTests {
+
+    private static final UserAttributes ATTRIBUTES = new UserAttributes(new String[]{"Department", "Manager"});
+
+    @Test
+    void partitionedDiffMatchesSingleThreaded() {
+        for (long seed = 1; seed <= 3; seed++) {
+            Random rnd = new Random(seed);
+            List<EntitlementRecord> oldRecs = new ArrayList<>();
+            List<EntitlementRecord> newRecs = new ArrayList<>();
+            generate(rnd, oldRecs, newRecs);
+
+            List<List<String>> single = lists(new DiffService(ATTRIBUTES, 1).compare(oldRecs, newRecs));
+            for (List<String> list : single) assertFalse(list.isEmpty(), "seed " + seed);
+            assertEquals(single, lists(new DiffService(ATTRIBUTES, 7).compare(oldRecs, newRecs)), "seed " + seed);
+            assertEquals(single, lists(new DiffService(ATTRIBUTES, 0).compare(oldRecs, newRecs)), "seed " + seed);
+        }
+    }
+
+    // Users whose ids differ only in case and surrounding spaces, blank ids, renamed users and
+    // changed attributes, users and entitlements that come and go
+    private static void generate(Random rnd, List<EntitlementRecord> oldRecs, List<EntitlementRecord> newRecs) {
+        for (int u = 0; u < 3000; u++) {
+            String id = "User" + u;
+            String name = "Name " + u;
+            String dept = "D" + rnd.nextInt(5);
+            boolean inOld = rnd.nextInt(20) != 0;
+            boolean inNew = rnd.nextInt(20) != 0;
+            String newName = rnd.nextInt(15) == 0 ? "Renamed " + u : name;
+            String newDept = rnd.nextInt(15) == 0 ? "D9" : dept;
+
+            int ents = 1 + rnd.nextInt(6);
+            for (int e = 0; e < ents; e++) {
+                String app = "App" + rnd.nextInt(4);
+                String role = "Role" + rnd.nextInt(8);
+                if (inOld && rnd.nextInt(10) != 0) {
+                    oldRecs.add(new EntitlementRecord(variant(rnd, id), name, app, role, new String[]{dept, "M" + u % 7}));
+                }
+                if (inNew && rnd.nextInt(10) != 0) {
+                    newRecs.add(new EntitlementRecord(variant(rnd, id), newName, variant(rnd, app), role, new String[]{newDept, "M" + u % 7}));
+                }
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            oldRecs.add(new EntitlementRecord(rnd.nextBoolean() ? "" : "  ", "Nobody", "App0", "Role0", null));
+            newRecs.add(new EntitlementRecord(null, "Nobody", "App1", "Role" + i, null));
+        }
+    }
+
+    private static String variant(Random rnd, String s) {
+        return switch (rnd.nextInt(4)) {
+            case 0 -> s.toUpperCase(Locale.ROOT);
+            case 1 -> s.toLowerCase(Locale.ROOT);
+            case 2 -> " " + s + "\t";
+            default -> s;
+        };
+    }
+
+    // the five lists, every row rendered with all its fields
+    private static List<List<String>> lists(DiffResult r) {
+        List<String> usersAdded = new ArrayList<>();
+        List<String> usersRemoved = new ArrayList<>();
+        List<String> fieldChanges = new ArrayList<>();
+        List<String> entAdded = new ArrayList<>();
+        List<String> entRemoved = new ArrayList<>();
+        r.usersAdded.forEach(c -> usersAdded.add(c.userId + "|" + c.name));
+        r.usersRemoved.forEach(c -> usersRemoved.add(c.userId + "|" + c.name));
+        r.userFieldChanges.forEach(c -> fieldChanges.add(c.userId + "|" + c.name + "|" + c.field + "|" + c.oldValue + "|" + c.newValue));
+        r.entAdded.forEach(c -> entAdded.add(c.userId + "|" + c.name + "|" + c.app + "|" + c.role));
+        r.entRemoved.forEach(c -> entRemoved.add(c.userId + "|" + c.name + "|" + c.app + "|" + c.role));
+        return List.of(usersAdded, usersRemoved, fieldChanges, entAdded, entRemoved);
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.democolauam;
+
+// Case-insensitive (userId, app, role) key shared by ExcelParser.dedupe and DiffService.
+// Parts are compared trimmed and case-folded in place: the 64-bit hash is computed once and
+// equality walks the original strings, so no lower-cased copies are ever built.
+public final class EntKey {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String userId;
+    private final String app;
+    private final String role;
+    private final long hash;
+    // hash of the folded userId alone, for partitioning by user
+    private final long userHash;
+
+    public EntKey(String userId, String app, String role) {
+        this.userId = safe(userId);
+        this.app = safe(app);
+        this.role = safe(role);
+        long h = FNV_OFFSET;
+        h = mix(h, this.userId);
+        this.userHash = h;
+        h = mix(h, this.app);
+        h = mix(h, this.role);
+        this.hash = h;
+    }
+
+    // DiffService ignores keys with a blank part
+    public boolean isComplete() {
+        return !blank(userId) && !blank(app) && !blank(role);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EntKey k)) return false;
+        return hash == k.hash && same(userId, k.userId) && same(app, k.app) && same(role, k.role);
+    }
+
+    // keys whose userIds are equal (trimmed, case-folded) always agree on it
+    long userHash() {
+        return userHash;
+    }
+
+    // The canonical form the key compares on (trimmed, folded); allocates, so only for per-distinct-string use
+    static String fold(String s) {
+        s = safe(s);
+        int from = start(s), to = end(s, from);
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) sb.append(fold(s.charAt(i)));
+        return sb.toString();
+    }
+
+    private static long mix(long h, String s) {
+        for (int i = start(s), end = end(s, i); i < end; i++) {
+            h ^= fold(s.charAt(i));
+            h *= FNV_PRIME;
+        }
+        // separator, so ("ab", "c") and ("a", "bc") hash differently
+        h ^= 0x1f;
+        h *= FNV_PRIME;
+        return h;
+    }
+
+    private static boolean same(String a, String b) {
+        int from1 = start(a), len1 = end(a, from1) - from1;
+        int from2 = start(b), len2 = end(b, from2) - from2;
+        return len1 == len2 && a.regionMatches(true, from1, b, from2, len1);
+    }
+
+    // same per-char folding as String.regionMatches(ignoreCase = true)
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean blank(String s) {
+        return start(s) == s.length() || s.isBlank();
+    }
+
+    // trim() bounds without the copy
+    private static int start(String s) {
+        int i = 0;
+        while (i < s.length() && s.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static int end(String s, int start) {
+        int i = s.length();
+        while (i > start && s.charAt(i - 1) <= ' ') i--;
+        return i;
+    }
+
+    private static String safe(String s) {
+        return s == null ? "" : s;
+    }
+}
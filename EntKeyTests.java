@@ -0,0 +1,102 @@
+package org.example.democolauam;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntKeyTests {
+
+    @Test
+    void caseAndSurroundingWhitespaceDoNotMatter() {
+        EntKey a = new EntKey("U1", "SAP", "Admin");
+        EntKey b = new EntKey("  u1\t", "sap ", "\nADMIN");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.userHash(), b.userHash());
+    }
+
+    @Test
+    void innerCharactersStillMatter() {
+        EntKey a = new EntKey("u1", "sap", "admin");
+        assertNotEquals(a, new EntKey("u 1", "sap", "admin"));
+        assertNotEquals(a, new EntKey("u1", "sap", "admins"));
+        // the parts are hashed separately, moving a char across them is a different key
+        assertNotEquals(new EntKey("ab", "c", "r"), new EntKey("a", "bc", "r"));
+        assertNotEquals(new EntKey("ab", "c", "r").hashCode(), new EntKey("a", "bc", "r").hashCode());
+    }
+
+    @Test
+    void foldAgreesWithEquals() {
+        List<String> values = List.of("Admin", " ADMIN ", "admin", "Straße", "STRASSE", "İstanbul", "istanbul", "ǅ", "ǆ");
+        for (String x : values) {
+            for (String y : values) {
+                boolean equalKeys = new EntKey(x, "a", "r").equals(new EntKey(y, "a", "r"));
+                assertEquals(equalKeys, EntKey.fold(x).equals(EntKey.fold(y)), x + " / " + y);
+            }
+        }
+        assertEquals("admin", EntKey.fold("  ADMIN\t"));
+        assertEquals("", EntKey.fold(null));
+    }
+
+    @Test
+    void nullAndBlankParts() {
+        assertEquals(new EntKey(null, "a", "r"), new EntKey("  ", "a", "r"));
+        assertTrue(new EntKey("u", "a", "r").isComplete());
+        assertFalse(new EntKey("u", " ", "r").isComplete());
+        assertFalse(new EntKey(null, "a", "r").isComplete());
+    }
+
+    @Test
+    void dedupeAcrossSheetsKeepsFirstAndFillsBlankName() throws Exception {
+        Path file = Files.createTempFile("entkey-", ".xlsx");
+        try {
+            try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+                sheet(wb, "One", new String[][]{
+                        {"u1", "", "SAP", "Admin"},
+                        {"u2", "Bob", "SAP", "Viewer"}});
+                sheet(wb, "Two", new String[][]{
+                        {" U1 ", "Ann", "sap", "ADMIN"},
+                        {"u2", "Robert", "Sap", "viewer"},
+                        {"u2", "Bob", "SAP", "Editor"}});
+                wb.write(out);
+            }
+            ExcelParser parser = new ExcelParser(new ParsedWorkbookCache(0, 0), new SimpleMeterRegistry(), UserAttributes.NONE);
+            List<EntitlementRecord> records = parser.parseAllSheets(file);
+
+            assertEquals(3, records.size());
+            // first occurrence wins, a blank name is filled from a later duplicate
+            assertRecord(records.get(0), "u1", "Ann", "SAP", "Admin");
+            assertRecord(records.get(1), "u2", "Bob", "SAP", "Viewer");
+            assertRecord(records.get(2), "u2", "Bob", "SAP", "Editor");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void sheet(XSSFWorkbook wb, String name, String[][] rows) {
+        Sheet sh = wb.createSheet(name);
+        Row h = sh.createRow(0);
+        String[] header = {"User ID", "Name", "Application", "Role"};
+        for (int i = 0; i < header.length; i++) h.createCell(i).setCellValue(header[i]);
+        for (int r = 0; r < rows.length; r++) {
+            Row row = sh.createRow(r + 1);
+            for (int c = 0; c < rows[r].length; c++) row.createCell(c).setCellValue(rows[r][c]);
+        }
+    }
+
+    private static void assertRecord(EntitlementRecord r, String userId, String name, String app, String role) {
+        assertEquals(List.of(userId, name, app, role), List.of(r.userId, r.name, r.app, r.role));
+    }
+}
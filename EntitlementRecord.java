@@ -1,16 +1,49 @@
 package org.example.democolauam;
 
 public class EntitlementRecord {
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
     public final String userId;
     public final String name;
     public final String app;
     public final String role;
+    // values of the configured UserAttributes columns, in their order; not copied, don't modify
+    private final String[] attributes;
+
+    // built on first use and reused by dedupe and diff; benign race, EntKey is immutable
+    private EntKey key;
 
     public EntitlementRecord(String userId, String name, String app, String role) {
+        this(userId, name, app, role, NO_ATTRIBUTES);
+    }
+
+    public EntitlementRecord(String userId, String name, String app, String role, String[] attributes) {
         this.userId = userId;
         this.name = name;
         this.app = app;
         this.role = role;
+        this.attributes = attributes == null ? NO_ATTRIBUTES : attributes;
+    }
+
+    public EntKey key() {
+        EntKey k = key;
+        if (k == null) key = k = new EntKey(userId, app, role);
+        return k;
     }
-}
 
+    public int attributeCount() {
+        return attributes.length;
+    }
+
+    // "" past the end, so records read without the extra columns compare as blank
+    public String attribute(int i) {
+        return i < attributes.length && attributes[i] != null ? attributes[i] : "";
+    }
+
+    // same record with another name, the key is carried over
+    public EntitlementRecord withName(String newName) {
+        EntitlementRecord r = new EntitlementRecord(userId, newName, app, role, attributes);
+        r.key = key;
+        return r;
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.democolauam;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Column-oriented EntitlementRecord list: four int columns of dictionary ids instead of four String refs per row
+public final class EntitlementTable {
+
+    private final StringDictionary dict;
+
+    private int[] userId;
+    private int[] name;
+    private int[] app;
+    private int[] role;
+    private int size;
+
+    public EntitlementTable(StringDictionary dict) {
+        this(dict, 1024);
+    }
+
+    public EntitlementTable(StringDictionary dict, int capacity) {
+        this.dict = dict;
+        int c = Math.max(capacity, 16);
+        this.userId = new int[c];
+        this.name = new int[c];
+        this.app = new int[c];
+        this.role = new int[c];
+    }
+
+    // Wraps ready-made columns (e.g. a loaded snapshot), the arrays are not copied
+    EntitlementTable(StringDictionary dict, int[] userId, int[] name, int[] app, int[] role, int size) {
+        this.dict = dict;
+        this.userId = userId;
+        this.name = name;
+        this.app = app;
+        this.role = role;
+        this.size = size;
+    }
+
+    public static EntitlementTable of(List<EntitlementRecord> recs, StringDictionary dict) {
+        EntitlementTable t = new EntitlementTable(dict, recs.size());
+        for (EntitlementRecord r : recs) t.add(r);
+        return t;
+    }
+
+    public void add(EntitlementRecord r) {
+        add(r.userId, r.name, r.app, r.role);
+    }
+
+    public void add(String userId, String name, String app, String role) {
+        if (size == this.userId.length) grow();
+        this.userId[size] = dict.intern(userId);
+        this.name[size] = dict.intern(name);
+        this.app[size] = dict.intern(app);
+        this.role[size] = dict.intern(role);
+        size++;
+    }
+
+    // replaces the name of a row already added (dedupe keeps the first non-blank name)
+    void setName(int row, String name) {
+        this.name[row] = dict.intern(name);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public StringDictionary dictionary() {
+        return dict;
+    }
+
+    public int userIdAt(int i) {
+        return userId[i];
+    }
+
+    public int nameAt(int i) {
+        return name[i];
+    }
+
+    public int appAt(int i) {
+        return app[i];
+    }
+
+    public int roleAt(int i) {
+        return role[i];
+    }
+
+    public EntitlementRecord record(int i) {
+        return new EntitlementRecord(dict.get(userId[i]), dict.get(name[i]), dict.get(app[i]), dict.get(role[i]));
+    }
+
+    private void grow() {
+        int c = userId.length * 2;
+        userId = Arrays.copyOf(userId, c);
+        name = Arrays.copyOf(name, c);
+        app = Arrays.copyOf(app, c);
+        role = Arrays.copyOf(role, c);
+    }
+}
@@ -1,67 +1,408 @@
 package org.example.democolauam;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class ExcelParser {
 
-    public List<EntitlementRecord> parseAllSheets(MultipartFile file) {
-        List<EntitlementRecord> out = new ArrayList<>();
+    // shared by all requests, so concurrent uploads cannot oversubscribe the CPUs
+    private final ExecutorService sheetPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), sheetThreads());
 
-        try (InputStream in = file.getInputStream();
-             Workbook wb = new XSSFWorkbook(in)) {
+    private final ParsedWorkbookCache cache;
+    private final UserAttributes attributes;
 
-            for (int s = 0; s < wb.getNumberOfSheets(); s++) {
-                Sheet sheet = wb.getSheetAt(s);
-                if (sheet == null) continue;
+    // Rows parsed so far per sheet; called every few thousand rows and once at the end of each sheet
+    @FunctionalInterface
+    public interface Progress {
+        Progress NONE = (sheet, rows) -> { };
 
-                // Assume first row is headers
-                Row header = sheet.getRow(0);
-                if (header == null) continue;
+        void sheetRows(String sheet, long rows);
+    }
 
-                Map<String, Integer> idx = headerIndex(header);
+    // Input format of an upload: by its first bytes for uploads (sniff), by extension for files
+    // (anything else is read as .xlsx)
+    public enum Format {
+        XLSX(".xlsx"), XLS(".xls"), CSV(".csv"), TSV(".tsv");
 
-                // Expected columns (flexible names)
-                Integer cUser = pick(idx, "userid", "user id", "user", "id");
-                Integer cName = pick(idx, "name", "fullname", "displayname", "display name");
-                Integer cApp  = pick(idx, "application", "app", "system");
-                Integer cRole = pick(idx, "role", "entitlement", "permission", "group");
+        static final int SNIFF_BYTES = 4096;
 
-                // If we don’t have at least user + name, still try
-                for (int r = 1; r <= sheet.getLastRowNum(); r++) {
-                    Row row = sheet.getRow(r);
-                    if (row == null) continue;
+        final String suffix;
 
-                    String userId = cellToString(row.getCell(nvl(cUser)));
-                    String name   = cellToString(row.getCell(nvl(cName)));
-                    String app    = cellToString(row.getCell(nvl(cApp)));
-                    String role   = cellToString(row.getCell(nvl(cRole)));
+        Format(String suffix) {
+            this.suffix = suffix;
+        }
 
-                    if (isBlank(userId) && isBlank(name) && isBlank(app) && isBlank(role)) continue;
-                    if (isBlank(userId)) continue; // userId is mandatory
+        public static Format of(String filename) {
+            String f = filename == null ? "" : filename.trim().toLowerCase(Locale.ROOT);
+            if (f.endsWith(".xls")) return XLS;
+            if (f.endsWith(".csv")) return CSV;
+            if (f.endsWith(".tsv") || f.endsWith(".tab")) return TSV;
+            return XLSX;
+        }
 
-                    out.add(new EntitlementRecord(norm(userId), normName(name), norm(app), norm(role)));
+        // zip -> .xlsx, OLE2 -> .xls, text -> CSV/TSV (by extension, else by the first line's
+        // separators); anything else is rejected before it is stored or parsed
+        public static Format sniff(byte[] head, int n, String filename) {
+            if (n <= 0) throw new IllegalArgumentException("Empty upload: " + filename);
+            if (n >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4) return XLSX;
+            if (n >= 8 && (head[0] & 0xff) == 0xD0 && (head[1] & 0xff) == 0xCF && (head[2] & 0xff) == 0x11
+                    && (head[3] & 0xff) == 0xE0 && (head[4] & 0xff) == 0xA1 && (head[5] & 0xff) == 0xB1
+                    && head[6] == 0x1A && (head[7] & 0xff) == 0xE1) {
+                return XLS;
+            }
+            int tabs = 0, commas = 0;
+            boolean firstLine = true;
+            for (int i = 0; i < n; i++) {
+                int b = head[i] & 0xff;
+                if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                    throw new IllegalArgumentException("Not a spreadsheet (.xlsx, .xls, .csv or .tsv): " + filename);
                 }
+                if (b == '\n') firstLine = false;
+                if (firstLine && b == '\t') tabs++;
+                if (firstLine && b == ',') commas++;
             }
+            Format byName = of(filename);
+            if (byName == CSV || byName == TSV) return byName;
+            return tabs > commas ? TSV : CSV;
+        }
+
+        public boolean delimited() {
+            return this == CSV || this == TSV;
+        }
+    }
+
+    // An upload copied to a temp file, with the SHA-256 taken on the way; close() deletes the file
+    public record Upload(Path file, String sha256, long size, Format format) implements AutoCloseable {
+        @Override
+        public void close() {
+            deleteQuietly(file);
+        }
+    }
+
+    // overall rows/sec: rate of parser.rows (data rows that became records, no header or rows
+    // without a userId); per sheet: parser.sheet.throughput
+    private final Counter rowsParsed;
+    private final DistributionSummary sheetRows;
+    private final DistributionSummary sheetThroughput;
+    private final Timer sheetTime;
 
+    public ExcelParser(ParsedWorkbookCache cache, MeterRegistry registry, UserAttributes attributes) {
+        this.cache = cache;
+        this.attributes = attributes;
+        this.rowsParsed = Counter.builder("parser.rows").description("Data rows read as records").register(registry);
+        this.sheetRows = DistributionSummary.builder("parser.sheet.rows").description("Rows per sheet").register(registry);
+        this.sheetThroughput = DistributionSummary.builder("parser.sheet.throughput")
+                .description("Rows per second, per sheet").register(registry);
+        this.sheetTime = Timer.builder("parser.sheet").description("Time to read one sheet").register(registry);
+    }
+
+    public List<EntitlementRecord> parseAllSheets(MultipartFile file) {
+        return spooled(file, upload -> parseAllSheets(upload, Progress.NONE));
+    }
+
+    // A file seen before (same SHA-256) skips POI entirely
+    public List<EntitlementRecord> parseAllSheets(Upload upload, Progress progress) {
+        List<EntitlementRecord> hit = cache.get(upload.sha256());
+        if (hit != null) return hit;
+        return cache.put(upload.sha256(), new ArrayList<>(parseMerged(upload.file(), upload.format(), progress).values()));
+    }
+
+    public List<EntitlementRecord> parseAllSheets(Path xlsx) {
+        return parseAllSheets(xlsx, Format.XLSX);
+    }
+
+    public List<EntitlementRecord> parseAllSheets(Path file, Format format) {
+        return new ArrayList<>(parseMerged(file, format, Progress.NONE).values());
+    }
+
+    // Raw records in workbook order, not deduped, without holding them; one sheet at a time
+    public void streamAllSheets(MultipartFile file, Consumer<EntitlementRecord> sink) {
+        spooled(file, upload -> {
+            streamAllSheets(upload, sink, Progress.NONE);
+            return null;
+        });
+    }
+
+    public void streamAllSheets(Path xlsx, Consumer<EntitlementRecord> sink) {
+        streamAllSheets(xlsx, Format.XLSX, sink, Progress.NONE);
+    }
+
+    public void streamAllSheets(Upload upload, Consumer<EntitlementRecord> sink, Progress progress) {
+        streamAllSheets(upload.file(), upload.format(), sink, progress);
+    }
+
+    private void streamAllSheets(Path file, Format format, Consumer<EntitlementRecord> sink, Progress progress) {
+        try {
+            if (format == Format.XLSX) XlsxStreamReader.read(file, ExcelParser::norm, new SheetRecords(sink, progress));
+            else readSequential(file, format, new SheetRecords(sink, progress));
         } catch (Exception e) {
             throw new RuntimeException("Excel parsing failed: " + e.getMessage(), e);
         }
+    }
+
+    // Same records as parseAllSheets, stored column-wise with ids from the given dictionary.
+    // Rows are appended (and deduped) as they are read, so no record list or map is ever built.
+    public EntitlementTable parseTable(MultipartFile file, StringDictionary dict) {
+        return spooled(file, upload -> {
+            List<EntitlementRecord> hit = cache.get(upload.sha256());
+            return hit != null ? EntitlementTable.of(hit, dict) : parseTable(upload.file(), upload.format(), dict);
+        });
+    }
+
+    public EntitlementTable parseTable(Path xlsx, StringDictionary dict) {
+        return parseTable(xlsx, Format.XLSX, dict);
+    }
+
+    // one sheet after the other: the dictionary is filled from a single thread
+    public EntitlementTable parseTable(Path file, Format format, StringDictionary dict) {
+        DedupingTable table = new DedupingTable(dict);
+        streamAllSheets(file, format, table, Progress.NONE);
+        return table.table;
+    }
+
+    // The event model needs random access into the zip, so the upload is spooled once to disk;
+    // the caller owns the returned file (e.g. a background job that outlives the request)
+    public Upload spool(MultipartFile file) {
+        try {
+            return spool(new BufferedInputStream(file.getInputStream(), 1 << 16), file.getOriginalFilename());
+        } catch (IOException e) {
+            throw new RuntimeException("Excel parsing failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Same, from a stream (e.g. one part of a request read as it arrives); the format is sniffed
+    // from the first bytes, so a non-spreadsheet is rejected before anything is written
+    public Upload spool(BufferedInputStream in, String filename) {
+        Path tmp = null;
+        try {
+            Format format = sniff(in, filename);
+            tmp = Files.createTempFile("upload-", format.suffix);
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            try (InputStream digested = new DigestInputStream(in, sha)) {
+                Files.copy(digested, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new Upload(tmp, HexFormat.of().formatHex(sha.digest()), Files.size(tmp), format);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            deleteQuietly(tmp);
+            throw new RuntimeException("Excel parsing failed: " + e.getMessage(), e);
+        }
+    }
+
+    // peeks at the first bytes, the stream is left where it was
+    public static Format sniff(BufferedInputStream in, String filename) throws IOException {
+        in.mark(Format.SNIFF_BYTES);
+        byte[] head = in.readNBytes(Format.SNIFF_BYTES);
+        in.reset();
+        return Format.sniff(head, head.length, filename);
+    }
 
-        return dedupe(out);
+    // CSV/TSV parsed while it is read (e.g. straight off the request), nothing stored on disk
+    public List<EntitlementRecord> parseDelimited(InputStream in, Format format) {
+        SheetRecords all = new SheetRecords(Progress.NONE);
+        readDelimited(in, format, all);
+        return new ArrayList<>(all.records.values());
     }
 
-    private Map<String, Integer> headerIndex(Row header) {
+    public void streamDelimited(InputStream in, Format format, Consumer<EntitlementRecord> sink) {
+        readDelimited(in, format, new SheetRecords(sink, Progress.NONE));
+    }
+
+    private static void readDelimited(InputStream in, Format format, SheetRowHandler handler) {
+        try {
+            DelimitedReader.read(new InputStreamReader(in, StandardCharsets.UTF_8), delimiter(format), sheetName(format), handler);
+        } catch (IOException e) {
+            throw new RuntimeException("Excel parsing failed: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> T spooled(MultipartFile file, Function<Upload, T> parse) {
+        try (Upload upload = spool(file)) {
+            return parse.apply(upload);
+        }
+    }
+
+    private Map<EntKey, EntitlementRecord> parseMerged(Path file, Format format, Progress progress) {
+        List<SheetRecords> sheets;
+        try {
+            if (format == Format.XLSX) {
+                sheets = XlsxStreamReader.readParallel(file, sheetPool, ExcelParser::norm, () -> new SheetRecords(progress));
+            } else {
+                SheetRecords all = new SheetRecords(progress);
+                readSequential(file, format, all);
+                sheets = List.of(all);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Excel parsing failed: " + e.getMessage(), e);
+        }
+
+        // merge in workbook order, so the winners are the same as a sequential pass
+        Map<EntKey, EntitlementRecord> m = new LinkedHashMap<>();
+        for (SheetRecords sheet : sheets) {
+            for (EntitlementRecord r : sheet.records.values()) addDeduped(m, r);
+        }
+        return m;
+    }
+
+    // .xls is one BIFF record stream, so its sheets come one after the other; a delimited file is
+    // a single sheet, named after its format
+    private static void readSequential(Path file, Format format, SheetRowHandler handler) throws Exception {
+        if (format == Format.XLS) XlsStreamReader.read(file, ExcelParser::norm, handler);
+        else DelimitedReader.read(file, delimiter(format), sheetName(format), handler);
+    }
+
+    private static char delimiter(Format format) {
+        return format == Format.TSV ? '\t' : ',';
+    }
+
+    private static String sheetName(Format format) {
+        return format.name().toLowerCase(Locale.ROOT);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sheetPool.shutdownNow();
+    }
+
+    private static ThreadFactory sheetThreads() {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "sheet-parser-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Turns the rows of one sheet into records: first row is the header, the rest are data.
+    // Records are deduped as they arrive, so only the distinct ones are held.
+    private class SheetRecords implements SheetRowHandler {
+
+        private final Map<EntKey, EntitlementRecord> records = new LinkedHashMap<>();
+        private final Consumer<EntitlementRecord> sink;
+        private final Progress progress;
+
+        private boolean hasHeader;
+        private int cUser, cName, cApp, cRole;
+        private final int[] cAttr = new int[attributes.size()];
+        // Attributes belong to the user, not the entitlement: rows of one user share one array as
+        // long as the values agree, and each distinct value is one String (CSV cells are all fresh).
+        private final String[] attrRow = new String[attributes.size()];
+        private final Map<String, String[]> userAttrs = new HashMap<>();
+        private final Map<String, String> attrValues = new HashMap<>();
+        private String sheetName;
+        private long rows;
+        // rows that became records, for the metrics
+        private long dataRows;
+        private long sheetStart;
+
+        SheetRecords(Progress progress) {
+            this.sink = r -> addDeduped(records, r);
+            this.progress = progress;
+        }
+
+        SheetRecords(Consumer<EntitlementRecord> sink, Progress progress) {
+            this.sink = sink;
+            this.progress = progress;
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+            hasHeader = false;
+            this.sheetName = sheetName;
+            rows = 0;
+            dataRows = 0;
+            sheetStart = System.nanoTime();
+        }
+
+        @Override
+        public void row(int rowNum, String[] cells) {
+            if ((++rows & 4095) == 0) progress.sheetRows(sheetName, rows);
+
+            if (rowNum == 0) {
+                Map<String, Integer> idx = headerIndex(cells);
+
+                // Expected columns (flexible names)
+                cUser = nvl(pick(idx, "userid", "user id", "user", "id"));
+                cName = nvl(pick(idx, "name", "fullname", "displayname", "display name"));
+                cApp  = nvl(pick(idx, "application", "app", "system"));
+                cRole = nvl(pick(idx, "role", "entitlement", "permission", "group"));
+                // configured extra columns, matched the same way; missing ones read as blank
+                for (int a = 0; a < cAttr.length; a++) cAttr[a] = nvl(pick(idx, attributes.names().get(a)));
+                hasHeader = true;
+                return;
+            }
+            // Assume first row is headers; a sheet without one is skipped
+            if (!hasHeader) return;
+
+            // If we don’t have at least user + name, still try.
+            // Shared strings come in already normalized, so norm() is a scan without copies for them
+            String userId = norm(cell(cells, cUser));
+            String name   = normName(cell(cells, cName));
+            String app    = norm(cell(cells, cApp));
+            String role   = norm(cell(cells, cRole));
+
+            if (userId.isEmpty()) return; // userId is mandatory
+            dataRows++;
+
+            sink.accept(new EntitlementRecord(userId, name, app, role, sharedAttributes(userId, cells)));
+        }
+
+        private String[] sharedAttributes(String userId, String[] cells) {
+            if (cAttr.length == 0) return null;
+            for (int a = 0; a < cAttr.length; a++) attrRow[a] = norm(cell(cells, cAttr[a]));
+            String[] last = userAttrs.get(userId);
+            if (last != null && Arrays.equals(last, attrRow)) return last;
+
+            String[] attrs = new String[attrRow.length];
+            for (int a = 0; a < attrs.length; a++) attrs[a] = attrValues.computeIfAbsent(attrRow[a], k -> k);
+            userAttrs.put(userId, attrs);
+            return attrs;
+        }
+
+        @Override
+        public void endSheet() {
+            hasHeader = false;
+            progress.sheetRows(sheetName, rows);
+
+            long nanos = Math.max(1, System.nanoTime() - sheetStart);
+            rowsParsed.increment(dataRows);
+            sheetRows.record(dataRows);
+            sheetTime.record(nanos, TimeUnit.NANOSECONDS);
+            sheetThroughput.record(dataRows * 1e9 / nanos);
+        }
+    }
+
+    private Map<String, Integer> headerIndex(String[] header) {
         Map<String, Integer> m = new HashMap<>();
-        for (Cell c : header) {
-            String k = normKey(cellToString(c));
-            if (!k.isBlank()) m.put(k, c.getColumnIndex());
+        for (int c = 0; c < header.length; c++) {
+            String k = normKey(header[c]);
+            if (!k.isBlank()) m.put(k, c);
         }
         return m;
     }
@@ -78,35 +419,42 @@ public class ExcelParser {
         return i == null ? -1 : i;
     }
 
-    private String cellToString(Cell cell) {
-        if (cell == null) return "";
-        try {
-            return switch (cell.getCellType()) {
-                case STRING -> cell.getStringCellValue();
-                case NUMERIC -> {
-                    double d = cell.getNumericCellValue();
-                    if (Math.abs(d - Math.rint(d)) < 0.0000001) yield Long.toString(Math.round(d));
-                    yield Double.toString(d);
-                }
-                case BOOLEAN -> Boolean.toString(cell.getBooleanCellValue());
-                case FORMULA -> {
-                    try { yield cell.getStringCellValue(); }
-                    catch (Exception ex) { yield Double.toString(cell.getNumericCellValue()); }
-                }
-                case BLANK, _NONE, ERROR -> "";
-            };
-        } catch (Exception e) {
-            return "";
-        }
+    private String cell(String[] cells, int c) {
+        // missing column or short row -> empty
+        return c < 0 || c >= cells.length ? "" : safe(cells[c]);
     }
 
-    private boolean isBlank(String s) {
-        return s == null || s.trim().isEmpty();
+    // trim() + collapse \s runs to one space; the input itself comes back when it is already clean
+    static String norm(String s) {
+        if (s == null) return "";
+        s = s.trim();
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (isSpace(c) && (c != ' ' || isSpace(s.charAt(i + 1)))) break;
+            i++;
+        }
+        if (i == n) return s;
+
+        StringBuilder sb = new StringBuilder(n).append(s, 0, i);
+        boolean space = false;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                space = true;
+            } else {
+                if (space) sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
     }
 
-    private String norm(String s) {
-        if (s == null) return "";
-        return s.trim().replaceAll("\\s+", " ");
+    // the regex \s class
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     private String normName(String s) {
@@ -119,23 +467,70 @@ public class ExcelParser {
         return s.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "");
     }
 
-    private List<EntitlementRecord> dedupe(List<EntitlementRecord> in) {
+    static List<EntitlementRecord> dedupe(List<EntitlementRecord> in) {
+        Map<EntKey, EntitlementRecord> m = new LinkedHashMap<>();
+        for (EntitlementRecord r : in) addDeduped(m, r);
+        return new ArrayList<>(m.values());
+    }
+
+    private static void addDeduped(Map<EntKey, EntitlementRecord> m, EntitlementRecord r) {
         // Remove duplicates by (userId|app|role) but keep the best name
-        Map<String, EntitlementRecord> m = new LinkedHashMap<>();
-        for (EntitlementRecord r : in) {
-            String key = (safe(r.userId) + "|" + safe(r.app) + "|" + safe(r.role)).toLowerCase(Locale.ROOT);
-            if (!m.containsKey(key)) {
-                m.put(key, r);
-            } else {
-                EntitlementRecord existing = m.get(key);
-                String name = safe(existing.name);
-                String newName = safe(r.name);
-                if (name.isBlank() && !newName.isBlank()) {
-                    m.put(key, new EntitlementRecord(existing.userId, newName, existing.app, existing.role));
-                }
+        EntitlementRecord existing = m.putIfAbsent(r.key(), r);
+        if (existing != null) {
+            String name = safe(existing.name);
+            String newName = safe(r.name);
+            if (name.isBlank() && !newName.isBlank()) {
+                m.put(existing.key(), existing.withName(newName));
             }
         }
-        return new ArrayList<>(m.values());
+    }
+
+    // addDeduped on table rows: the key is (userId, app, role) as folded dictionary ids, each
+    // distinct string is folded once
+    private static final class DedupingTable implements Consumer<EntitlementRecord> {
+        final EntitlementTable table;
+        private final StringDictionary folded = new StringDictionary();
+        private int[] foldOf = new int[256];
+        private final LongIntHashMap pairs = new LongIntHashMap(1024);
+        private final LongIntHashMap rows = new LongIntHashMap(1024);
+
+        DedupingTable(StringDictionary dict) {
+            this.table = new EntitlementTable(dict);
+        }
+
+        @Override
+        public void accept(EntitlementRecord r) {
+            StringDictionary dict = table.dictionary();
+            int user = fold(dict.intern(r.userId));
+            long pairKey = ((long) fold(dict.intern(r.app)) << 32) | fold(dict.intern(r.role));
+            int pair = pairs.get(pairKey);
+            if (pair < 0) {
+                pair = pairs.size();
+                pairs.put(pairKey, pair);
+            }
+            long key = ((long) user << 32) | pair;
+            int row = rows.get(key);
+            if (row < 0) {
+                rows.put(key, table.size());
+                table.add(r);
+            } else if (dict.get(table.nameAt(row)).isBlank() && !safe(r.name).isBlank()) {
+                table.setName(row, r.name);
+            }
+        }
+
+        private int fold(int id) {
+            if (id >= foldOf.length) foldOf = Arrays.copyOf(foldOf, Math.max(id + 1, foldOf.length * 2));
+            // stored +1, so 0 means not folded yet
+            if (foldOf[id] == 0) foldOf[id] = folded.intern(EntKey.fold(table.dictionary().get(id))) + 1;
+            return foldOf[id] - 1;
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) { }
     }
 
     private static String safe(String s) {
@@ -1,34 +1,345 @@
 package org.example.democolauam;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Component
-public class ExportStore {
+public class ExportStore implements MeterBinder {
 
-    public record StoredFile(String filename, byte[] bytes, Instant expiresAt) {}
+    private static final Logger log = LoggerFactory.getLogger(ExportStore.class);
 
-    private final Map<String, StoredFile> store = new ConcurrentHashMap<>();
+    // Produces the file on demand, straight into the download stream
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // what a token stands for; each download endpoint serves only its own kind
+    public enum Kind { CSV, BUNDLE }
+
+    // content writes the plain file, gzipContent the same file gzip-encoded
+    public record StoredFile(String filename, Content content, Content gzipContent, Instant expiresAt) {}
+
+    public record Stats(long hits, long misses, long evictions, long spills,
+                        int entries, long bytesResident, long bytesOnDisk) {}
+
+    // content != null: still rendered from memory; file != null: spilled to disk, gzip-compressed.
+    // Spilling drops content and its reference to the rows it renders; whether that frees them
+    // depends on the caller (a compare's lists also stay with its DiffResultStore entry).
+    private static final class Entry {
+        final Kind kind;
+        final String filename;
+        final Instant expiresAt;
+        final long estimatedBytes;
+        final boolean spillable;
+        volatile Content content;
+        volatile Path file;
+        volatile long fileBytes;
+        volatile long lastAccess = System.nanoTime();
+        boolean removed;
+        // open streams on the spilled file; removal leaves the file to the last one to close
+        int readers;
+
+        Entry(Kind kind, String filename, Content content, Instant expiresAt, long estimatedBytes, boolean spillable) {
+            this.kind = kind;
+            this.filename = filename;
+            this.content = content;
+            this.expiresAt = expiresAt;
+            this.estimatedBytes = estimatedBytes;
+            this.spillable = spillable;
+        }
+
+        // null if the entry was removed meanwhile. A spilled file is opened right here, so an
+        // eviction between get() and the download can't delete it from under the response; such a
+        // view is written once (either content) and then closed.
+        StoredFile view() {
+            Content c = content;
+            if (c != null) {
+                return new StoredFile(filename, c, out -> {
+                    GZIPOutputStream gz = new GZIPOutputStream(out, 1 << 16);
+                    c.writeTo(gz);
+                    gz.finish();
+                }, expiresAt);
+            }
+            InputStream raw = open();
+            if (raw == null) return null;
+            return new StoredFile(filename, out -> {
+                try (raw; InputStream in = new GZIPInputStream(raw, 1 << 16)) {
+                    in.transferTo(out);
+                }
+            }, out -> {
+                try (raw) {
+                    raw.transferTo(out);
+                }
+            }, expiresAt);
+        }
+
+        private synchronized InputStream open() {
+            if (removed) return null;
+            InputStream in;
+            try {
+                in = Files.newInputStream(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Export read failed: " + e.getMessage(), e);
+            }
+            readers++;
+            return new FilterInputStream(in) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) return;
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        closed();
+                    }
+                }
+            };
+        }
+
+        private synchronized void closed() {
+            if (--readers == 0 && removed) deleteQuietly(file);
+        }
+    }
+
+    private final Map<String, Entry> store = new ConcurrentHashMap<>();
     private final long ttlSeconds = 30 * 60; // 30 minutes
 
-    public String put(byte[] bytes, String filename) {
+    private final long maxResidentBytes;
+    private final long maxDiskBytes;
+    private final long spillThresholdBytes;
+    private final long sweepIntervalSeconds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "export-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ExportStore(@Value("${export.max-resident-mb:256}") long maxResidentMb,
+                       @Value("${export.max-disk-mb:2048}") long maxDiskMb,
+                       @Value("${export.spill-threshold-mb:16}") long spillThresholdMb,
+                       @Value("${export.sweep-interval-seconds:30}") long sweepIntervalSeconds) {
+        this.maxResidentBytes = maxResidentMb * 1024 * 1024;
+        this.maxDiskBytes = maxDiskMb * 1024 * 1024;
+        this.spillThresholdBytes = spillThresholdMb * 1024 * 1024;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // estimatedBytes: rough heap held by the content until it is downloaded or spilled
+    public String put(Content content, String filename, long estimatedBytes) {
         String token = UUID.randomUUID().toString().replace("-", "");
-        store.put(token, new StoredFile(filename, bytes, Instant.now().plusSeconds(ttlSeconds)));
+        Entry e = new Entry(Kind.CSV, filename, content, Instant.now().plusSeconds(ttlSeconds), estimatedBytes, true);
+        residentBytes.addAndGet(estimatedBytes);
+        store.put(token, e);
+
+        if (estimatedBytes >= spillThresholdBytes) {
+            // large exports don't stay on the heap; if the disk fails they just stay resident
+            try {
+                spill(e);
+            } catch (UncheckedIOException ignored) { }
+        } else if (residentBytes.get() > maxResidentBytes) {
+            sweeper.execute(this::sweep);
+        }
         return token;
     }
 
-    public StoredFile get(String token) {
-        if (token == null) return null;
-        StoredFile f = store.get(token);
-        if (f == null) return null;
-        if (Instant.now().isAfter(f.expiresAt())) {
-            store.remove(token);
+    // One ZIP of the given exports, streamed member by member; holds only the tokens. Members are
+    // looked up without counting as downloads.
+    public String putBundle(String filename, List<String> tokens) {
+        String token = UUID.randomUUID().toString().replace("-", "");
+        List<String> members = List.copyOf(tokens);
+        Content zip = out -> {
+            ZipOutputStream zos = new ZipOutputStream(out);
+            for (String t : members) {
+                Entry m = find(t, Kind.CSV);
+                StoredFile f = m == null ? null : m.view();
+                if (f == null) continue;
+                zos.putNextEntry(new ZipEntry(f.filename()));
+                f.content().writeTo(zos);
+                zos.closeEntry();
+            }
+            zos.finish();
+        };
+        store.put(token, new Entry(Kind.BUNDLE, filename, zip, Instant.now().plusSeconds(ttlSeconds), 0, false));
+        return token;
+    }
+
+    // null (a miss) if unknown, expired or of another kind
+    public StoredFile get(String token, Kind kind) {
+        Entry e = find(token, kind);
+        StoredFile f = e == null ? null : e.view();
+        if (f == null) {
+            misses.incrementAndGet();
             return null;
         }
+        hits.incrementAndGet();
         return f;
     }
+
+    private Entry find(String token, Kind kind) {
+        if (token == null) return null;
+        Entry e = store.get(token);
+        if (e == null || e.kind != kind) return null;
+        if (Instant.now().isAfter(e.expiresAt)) {
+            remove(token, e);
+            return null;
+        }
+        e.lastAccess = System.nanoTime();
+        return e;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), spills.get(),
+                store.size(), residentBytes.get(), diskBytes.get());
+    }
+
+    // Size/bytes gauges and hit/miss/eviction/spill counts, read from the store's own counters
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("export.store.entries", store, Map::size).register(registry);
+        Gauge.builder("export.store.bytes", residentBytes, AtomicLong::get)
+                .tag("location", "heap").baseUnit("bytes").register(registry);
+        Gauge.builder("export.store.bytes", diskBytes, AtomicLong::get)
+                .tag("location", "disk").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("export.store.requests", hits, AtomicLong::get).tag("result", "hit").register(registry);
+        FunctionCounter.builder("export.store.requests", misses, AtomicLong::get).tag("result", "miss").register(registry);
+        FunctionCounter.builder("export.store.evictions", evictions, AtomicLong::get).register(registry);
+        FunctionCounter.builder("export.store.spills", spills, AtomicLong::get).register(registry);
+    }
+
+    // TTL first, then spill least recently used heap entries, then evict least recently used files
+    void sweep() {
+        try {
+            Instant now = Instant.now();
+            store.forEach((token, e) -> {
+                if (now.isAfter(e.expiresAt)) remove(token, e);
+            });
+
+            if (residentBytes.get() > maxResidentBytes) {
+                for (Candidate c : lru()) {
+                    if (residentBytes.get() <= maxResidentBytes) break;
+                    if (c.entry().spillable && c.entry().content != null) spill(c.entry());
+                }
+            }
+
+            if (diskBytes.get() > maxDiskBytes) {
+                for (Candidate c : lru()) {
+                    if (diskBytes.get() <= maxDiskBytes) break;
+                    if (c.entry().file != null && remove(c.token(), c.entry())) {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run retries
+            log.warn("Export sweep failed, retrying next run", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sweeper.shutdownNow();
+        store.forEach(this::remove);
+    }
+
+    private record Candidate(String token, Entry entry, long lastAccess) {}
+
+    // lastAccess is read once per entry: downloads keep updating it, and a sort key that changes
+    // under TimSort can break its contract
+    private List<Candidate> lru() {
+        List<Candidate> all = new ArrayList<>(store.size());
+        store.forEach((token, e) -> all.add(new Candidate(token, e, e.lastAccess)));
+        all.sort(Comparator.comparingLong(Candidate::lastAccess));
+        return all;
+    }
+
+    private void spill(Entry e) {
+        synchronized (e) {
+            if (e.removed || e.content == null) return;
+            Path f = null;
+            try {
+                // CSVs repeat the same app/role names on every line, gzip shrinks them several-fold
+                f = Files.createTempFile("export-", ".csv.gz");
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(f), 1 << 16)) {
+                    e.content.writeTo(out);
+                }
+                e.fileBytes = Files.size(f);
+            } catch (IOException ex) {
+                deleteQuietly(f);
+                throw new UncheckedIOException("Export spill failed: " + ex.getMessage(), ex);
+            }
+            // file first: a concurrent view() that sees content == null must see the file
+            e.file = f;
+            e.content = null;
+            residentBytes.addAndGet(-e.estimatedBytes);
+            diskBytes.addAndGet(e.fileBytes);
+            spills.incrementAndGet();
+        }
+    }
+
+    private boolean remove(String token, Entry e) {
+        if (!store.remove(token, e)) return false;
+        synchronized (e) {
+            e.removed = true;
+            if (e.content != null) residentBytes.addAndGet(-e.estimatedBytes);
+            if (e.file != null) {
+                diskBytes.addAndGet(-e.fileBytes);
+                if (e.readers == 0) deleteQuietly(e.file);
+            }
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) { }
+    }
 }
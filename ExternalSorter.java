@@ -0,0 +1,170 @@
+package org.example.democolauam;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Sorts a record stream by (folded userId, arrival order) within a heap budget: the buffer is
+// sorted and spilled to a temp file whenever it fills up, and the runs are k-way merged on read.
+final class ExternalSorter implements Consumer<EntitlementRecord>, Closeable {
+
+    record Item(String group, long seq, EntitlementRecord rec) {}
+
+    private static final Comparator<Item> ORDER =
+            Comparator.comparing(Item::group).thenComparingLong(Item::seq);
+
+    private final long budgetBytes;
+    private final List<Item> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Closeable> open = new ArrayList<>();
+    private long bufferedBytes;
+    private long seq;
+
+    ExternalSorter(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    @Override
+    public void accept(EntitlementRecord r) {
+        Item item = new Item(EntKey.fold(r.userId), seq++, r);
+        buffer.add(item);
+        bufferedBytes += estimate(item);
+        if (bufferedBytes >= budgetBytes) spill();
+    }
+
+    // Call once all records are in; once anything was spilled the rest goes to disk too,
+    // so the buffer is free before the next input is read.
+    void finish() {
+        if (!runs.isEmpty() && !buffer.isEmpty()) spill();
+    }
+
+    Iterator<Item> iterator() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(ORDER);
+            return buffer.iterator();
+        }
+
+        PriorityQueue<RunReader> heads = new PriorityQueue<>((a, b) -> ORDER.compare(a.head, b.head));
+        for (Path run : runs) {
+            RunReader r = new RunReader(run);
+            open.add(r);
+            if (r.advance()) heads.add(r);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Item next() {
+                RunReader r = heads.poll();
+                if (r == null) throw new NoSuchElementException();
+                Item item = r.head;
+                try {
+                    if (r.advance()) heads.add(r);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return item;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        for (Closeable c : open) {
+            try {
+                c.close();
+            } catch (IOException ignored) { }
+        }
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignored) { }
+        }
+        buffer.clear();
+    }
+
+    private void spill() {
+        buffer.sort(ORDER);
+        try {
+            Path run = Files.createTempFile("diff-run-", ".bin");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (Item item : buffer) {
+                    writeString(out, item.group());
+                    out.writeLong(item.seq());
+                    writeString(out, item.rec().userId);
+                    writeString(out, item.rec().name);
+                    writeString(out, item.rec().app);
+                    writeString(out, item.rec().role);
+                    out.writeInt(item.rec().attributeCount());
+                    for (int a = 0; a < item.rec().attributeCount(); a++) writeString(out, item.rec().attribute(a));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill sorted run: " + e.getMessage(), e);
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private static long estimate(Item item) {
+        // object headers + refs, plus two bytes per char for the five strings and the attributes
+        EntitlementRecord r = item.rec();
+        long chars = item.group().length() + len(r.userId) + len(r.name) + len(r.app) + len(r.role);
+        for (int a = 0; a < r.attributeCount(); a++) chars += r.attribute(a).length();
+        return 200 + 40L * r.attributeCount() + 2 * chars;
+    }
+
+    private static int len(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    // length-prefixed UTF-8; writeUTF caps at 64KB, a cell can be larger
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private Item head;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            String group;
+            try {
+                group = readString(in);
+            } catch (EOFException end) {
+                head = null;
+                return false;
+            }
+            long seq = in.readLong();
+            String userId = readString(in), name = readString(in), app = readString(in), role = readString(in);
+            String[] attrs = new String[in.readInt()];
+            for (int a = 0; a < attrs.length; a++) attrs[a] = readString(in);
+            head = new Item(group, seq, new EntitlementRecord(userId, name, app, role, attrs));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -1,15 +1,33 @@
 package org.example.demolocaluam;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @RestController
 public class MainController {
@@ -17,15 +35,47 @@ public class MainController {
     private final ExcelParser parser;
     private final DiffService diff;
     private final ExportStore exportStore;
+    private final SnapshotStore snapshots;
+    private final DeltaStore deltas;
+    private final CompareJobs jobs;
+    private final CompareMetrics metrics;
+    private final DiffResultStore results;
 
-    public MainController(ExcelParser parser, DiffService diff, ExportStore exportStore) {
+    // parsing mostly waits on I/O and the sheet pool, so one cheap thread per upload is enough
+    private final ExecutorService uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // uploads bigger than this (old + new) are diffed out-of-core within externalBudgetBytes
+    private final long externalThresholdBytes;
+    private final long externalBudgetBytes;
+
+    // limits of the streamed /api/compare upload (the form endpoints use the servlet multipart limits)
+    private final long maxUploadFileBytes;
+    private final long maxUploadRequestBytes;
+
+    public MainController(ExcelParser parser, DiffService diff, ExportStore exportStore,
+                          SnapshotStore snapshots, DeltaStore deltas, CompareJobs jobs, CompareMetrics metrics,
+                          DiffResultStore results,
+                          @Value("${diff.external.threshold-mb:64}") long externalThresholdMb,
+                          @Value("${diff.external.memory-budget-mb:64}") long externalBudgetMb,
+                          @Value("${upload.max-file-mb:512}") long maxUploadFileMb,
+                          @Value("${upload.max-request-mb:1024}") long maxUploadRequestMb) {
         this.parser = parser;
         this.diff = diff;
         this.exportStore = exportStore;
+        this.snapshots = snapshots;
+        this.deltas = deltas;
+        this.jobs = jobs;
+        this.metrics = metrics;
+        this.results = results;
+        this.externalThresholdBytes = externalThresholdMb * 1024 * 1024;
+        this.externalBudgetBytes = externalBudgetMb * 1024 * 1024;
+        this.maxUploadFileBytes = maxUploadFileMb * 1024 * 1024;
+        this.maxUploadRequestBytes = maxUploadRequestMb * 1024 * 1024;
     }
 
     @GetMapping(value = "/", produces = MediaType.TEXT_HTML_VALUE)
     public String home() {
+        String options = snapshotOptions();
         String inner = """
             <div class="wrap">
               <div class="hero">
@@ -41,16 +91,17 @@ public class MainController {
                   <form class="form" action="/compare" method="post" enctype="multipart/form-data">
                     <div class="grid">
                       <div class="field">
-                        <label>Old file (Excel)</label>
-                        <input type="file" name="oldFile" accept=".xlsx,.xls" required />
+                        <label>Old file (Excel / CSV)</label>
+                        <input type="file" name="oldFile" accept=".xlsx,.xls,.csv,.tsv" required />
                       </div>
                       <div class="field">
-                        <label>New file (Excel)</label>
-                        <input type="file" name="newFile" accept=".xlsx,.xls" required />
+                        <label>New file (Excel / CSV)</label>
+                        <input type="file" name="newFile" accept=".xlsx,.xls,.csv,.tsv" required />
                       </div>
                     </div>
 
                     <button class="btn" type="submit">Compare</button>
+                    <button class="btn" type="submit" formaction="/jobs/compare">Compare in background</button>
 
                     <div class="note">
                       Τοπική χρήση: Δεν αποθηκεύονται αρχεία σε cloud/DB. Γίνεται επεξεργασία στη μνήμη
@@ -59,8 +110,72 @@ public class MainController {
                   </form>
                 </div>
               </div>
+
+              <div class="results">
+                <div class="card">
+                  <div class="card-title">N-way compare</div>
+                  <form class="form" action="/compare-many" method="post" enctype="multipart/form-data">
+                    <div class="field">
+                      <label>Exports (HR, IAM, εφαρμογές — 2 έως 64 αρχεία)</label>
+                      <input type="file" name="files" accept=".xlsx,.xls,.csv,.tsv" multiple required />
+                    </div>
+                    <button class="btn" type="submit">Compare all</button>
+                  </form>
+                </div>
+              </div>
+
+              <div class="results">
+                <div class="card">
+                  <div class="card-title">Baseline snapshots</div>
+                  <form class="form" action="/snapshots" method="post" enctype="multipart/form-data">
+                    <div class="grid">
+                      <div class="field">
+                        <label>Baseline file (Excel / CSV)</label>
+                        <input type="file" name="file" accept=".xlsx,.xls,.csv,.tsv" required />
+                      </div>
+                      <div class="field">
+                        <label>Snapshot id (π.χ. 2026-09, κενό = timestamp)</label>
+                        <input type="text" name="label" />
+                      </div>
+                    </div>
+                    <button class="btn" type="submit">Save snapshot</button>
+                  </form>
+
+                  <form class="form" action="/compare-snapshot" method="post" enctype="multipart/form-data">
+                    <div class="grid">
+                      <div class="field">
+                        <label>Old snapshot</label>
+                        <select name="snapshotId" required>%s</select>
+                      </div>
+                      <div class="field">
+                        <label>New file (Excel / CSV)</label>
+                        <input type="file" name="newFile" accept=".xlsx,.xls,.csv,.tsv" required />
+                      </div>
+                      <div class="field">
+                        <label>Period id (προαιρετικό: αποθηκεύει snapshot + delta)</label>
+                        <input type="text" name="period" />
+                      </div>
+                    </div>
+                    <button class="btn" type="submit">Compare with snapshot</button>
+                  </form>
+
+                  <form class="form" action="/deltas/net" method="get">
+                    <div class="grid">
+                      <div class="field">
+                        <label>From period</label>
+                        <select name="from" required>%s</select>
+                      </div>
+                      <div class="field">
+                        <label>To period</label>
+                        <select name="to" required>%s</select>
+                      </div>
+                    </div>
+                    <button class="btn" type="submit">Net change</button>
+                  </form>
+                </div>
+              </div>
             </div>
-            """;
+            """.formatted(options, options, options);
 
         return pageShell("Access Review Diff (Local)", inner);
     }
@@ -77,39 +192,219 @@ public class MainController {
             return pageShell("Σφάλμα", errorBox("Παρακαλώ ανέβασε και τα δύο αρχεία (old & new)."));
         }
 
+        boolean external = oldFile.getSize() + newFile.getSize() > externalThresholdBytes;
+        CompareMetrics.Run run = metrics.start(external ? "external" : "memory");
         try {
-            var oldRecs = parser.parseAllSheets(oldFile);
-            var newRecs = parser.parseAllSheets(newFile);
-
-            // Δεν “δένω” compile-time στο σχήμα του DiffResult για να δουλεύει είτε είναι record είτε class.
-            Object res = diff.compare(oldRecs, newRecs);
-
-            // Pull lists safely (method or field)
-            List<?> usersAdded = getList(res, "usersAdded");
-            List<?> usersRemoved = getList(res, "usersRemoved");
-            List<?> userFieldChanges = getList(res, "userFieldChanges");
-            List<?> entAdded = getList(res, "entAdded");
-            List<?> entRemoved = getList(res, "entRemoved");
-
-            // Prepare CSV exports (χωρίς opencsv dependency)
-            String usersAddedToken = exportStore.put(csvUsers(usersAdded), "users_added.csv");
-            String usersRemovedToken = exportStore.put(csvUsers(usersRemoved), "users_removed.csv");
-            String userChangesToken = exportStore.put(csvUserChanges(userFieldChanges), "users_changes.csv");
-            String entAddedToken = exportStore.put(csvEnt(entAdded), "entitlements_added.csv");
-            String entRemovedToken = exportStore.put(csvEnt(entRemoved), "entitlements_removed.csv");
+            DiffResult res = external
+                    ? diffExternal(sink -> parser.streamAllSheets(oldFile, sink), sink -> parser.streamAllSheets(newFile, sink), run::parsed)
+                    : diffInMemory(() -> parser.parseAllSheets(oldFile), () -> parser.parseAllSheets(newFile), run::parsed);
+            run.diffed(res);
+
+            String page = resultsPage(res);
+            run.exported();
+            run.finished(true);
+            return page;
+
+        } catch (Exception e) {
+            run.finished(false);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(cause.getMessage()))));
+        }
+    }
+
+    // Same uploads as /compare for automation (oldFile and newFile, in either order), answered
+    // with the diff as NDJSON events (see NdjsonExport) written while it runs. The multipart body
+    // is read here as it arrives: CSV/TSV parts are parsed straight off the wire, workbooks are
+    // spooled once (the old one parses while the new one is still uploading). Large or
+    // unknown-length uploads go through the external merge, so neither side of the diff is held
+    // in memory; the in-memory branch for smaller uploads holds both parsed sides and the whole
+    // DiffResult before the first row is written. The two modes order the rows differently
+    // (NdjsonExport).
+    @PostMapping(value = "/api/compare", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public void apiCompare(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+
+        ExcelParser.Upload waiting = null;
+        try (NdjsonExport out = new NdjsonExport(response.getOutputStream())) {
+            String boundary = MultipartStream.boundary(request.getContentType());
+            long length = request.getContentLengthLong();
+            if (boundary == null) {
+                response.setStatus(400);
+                out.error("Expected a multipart/form-data upload");
+                return;
+            }
+            if (length > maxUploadRequestBytes) {
+                response.setStatus(413);
+                out.error("Upload is over " + maxUploadRequestBytes + " bytes");
+                return;
+            }
+
+            // the old file is checked (name, size, content) before anything is answered; a new file
+            // sent first waits on disk until then
+            MultipartStream parts = new MultipartStream(request.getInputStream(), boundary, maxUploadFileBytes, maxUploadRequestBytes);
+            Incoming oldIn;
+            Supplier<Incoming> newIn;
+            try {
+                Incoming first = incoming(parts, null);
+                if (first.name().equals("oldFile")) {
+                    oldIn = first;
+                    newIn = () -> incoming(parts, "newFile");
+                } else {
+                    Incoming spooled = spool(first);
+                    waiting = spooled.spooled();
+                    newIn = () -> spooled;
+                    oldIn = incoming(parts, "oldFile");
+                }
+            } catch (UncheckedIOException | IllegalArgumentException e) {
+                response.setStatus(e.getCause() instanceof MultipartStream.TooLarge ? 413 : 400);
+                out.error(e.getMessage());
+                return;
+            }
+
+            boolean external = length < 0 || length > externalThresholdBytes;
+            CompareMetrics.Run run = metrics.start("api");
+            out.start(external ? "external" : "memory");
+            try {
+                if (external) {
+                    diff.compareExternal(sink -> receive(oldIn, sink),
+                            thenRun(sink -> receive(newIn.get(), sink), run::parsed), externalBudgetBytes, out);
+                } else {
+                    var oldSide = receive(oldIn).thenApply(diff::index);
+                    var newRecs = receive(newIn.get());
+                    CompletableFuture.allOf(oldSide, newRecs).exceptionally(ex -> null).join();
+                    run.parsed();
+                    diff.compare(oldSide.join(), newRecs.join()).replay(out);
+                }
+                run.diffed(out.usersAdded(), out.usersRemoved(), out.fieldChanges(), out.entAdded(), out.entRemoved());
+                out.summary();
+                run.finished(true);
+            } catch (RuntimeException e) {
+                // the status is long sent, the error goes in the stream
+                run.finished(false);
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                out.error(String.valueOf(cause.getMessage()));
+            }
+        } finally {
+            // normally gone once parsed, but not if the old file failed first
+            if (waiting != null) waiting.close();
+        }
+    }
+
+    // body: the part as it arrives; spooled: instead of a body, a part that was stored to be read later
+    private record Incoming(String name, String filename, ExcelParser.Format format,
+                            BufferedInputStream body, ExcelParser.Upload spooled) {}
+
+    // The next file part (form fields in between are skipped), oldFile or newFile, or only the
+    // expected one if given; its format is sniffed from the first bytes
+    private static Incoming incoming(MultipartStream parts, String expected) {
+        try {
+            MultipartStream.Part part = parts.next();
+            while (part != null && part.filename() == null) part = parts.next();
+            if (part == null) {
+                throw new IllegalArgumentException("Expected the " + (expected != null ? expected : "oldFile and newFile") + " part");
+            }
+            boolean known = expected != null ? expected.equals(part.name())
+                    : "oldFile".equals(part.name()) || "newFile".equals(part.name());
+            if (!known) {
+                throw new IllegalArgumentException("Unexpected file part " + part.name() + " (expected oldFile and newFile)");
+            }
+            String filename = part.filename().isBlank() ? part.name() : part.filename();
+            BufferedInputStream body = new BufferedInputStream(part.body(), 1 << 16);
+            return new Incoming(part.name(), filename, ExcelParser.sniff(body, filename), body, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    private Incoming spool(Incoming in) {
+        try {
+            return new Incoming(in.name(), in.filename(), in.format(), null, parser.spool(in.body(), in.filename()));
+        } catch (RuntimeException e) {
+            // same answer as a failure while the part is checked
+            if (e.getCause() instanceof IOException io) throw new UncheckedIOException(io.getMessage(), io);
+            throw e;
+        }
+    }
+
+    // in-memory mode: a workbook is parsed from its spooled copy on another thread, so the
+    // request thread can go on reading the next part
+    private CompletableFuture<List<EntitlementRecord>> receive(Incoming in) {
+        if (in.spooled() == null && in.format().delimited()) {
+            return CompletableFuture.completedFuture(parser.parseDelimited(in.body(), in.format()));
+        }
+        ExcelParser.Upload upload = in.spooled() != null ? in.spooled() : parser.spool(in.body(), in.filename());
+        return CompletableFuture.supplyAsync(() -> {
+            try (upload) {
+                return parser.parseAllSheets(upload, ExcelParser.Progress.NONE);
+            }
+        }, uploadExecutor);
+    }
+
+    // external mode: raw records into the sorter, in upload order
+    private void receive(Incoming in, Consumer<EntitlementRecord> sink) {
+        if (in.spooled() == null && in.format().delimited()) {
+            parser.streamDelimited(in.body(), in.format(), sink);
+            return;
+        }
+        try (ExcelParser.Upload upload = in.spooled() != null ? in.spooled() : parser.spool(in.body(), in.filename())) {
+            parser.streamAllSheets(upload, sink, ExcelParser.Progress.NONE);
+        }
+    }
+
+    @PostMapping(
+            value = "/compare-many",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public String compareMany(@RequestParam("files") List<MultipartFile> files) {
+        List<MultipartFile> uploads = files == null ? List.of() : files.stream().filter(f -> !f.isEmpty()).toList();
+        if (uploads.size() < 2 || uploads.size() > 64) {
+            return pageShell("Σφάλμα", errorBox("Παρακαλώ ανέβασε από 2 έως 64 αρχεία."));
+        }
+
+        try {
+            // every export parses at the same time, then one pass over all of them
+            List<CompletableFuture<List<EntitlementRecord>>> parsed = new ArrayList<>();
+            List<String> sources = new ArrayList<>();
+            for (MultipartFile f : uploads) {
+                parsed.add(CompletableFuture.supplyAsync(() -> parser.parseAllSheets(f), uploadExecutor));
+                sources.add(f.getOriginalFilename() == null || f.getOriginalFilename().isBlank()
+                        ? "source" + (sources.size() + 1) : f.getOriginalFilename());
+            }
+            CompletableFuture.allOf(parsed.toArray(CompletableFuture[]::new)).exceptionally(ex -> null).join();
+
+            NWayResult res = diff.compareMany(sources, parsed.stream().map(CompletableFuture::join).toList());
+
+            // each export holds only its own list and the N-way result is not kept anywhere else,
+            // so spilling one frees it
+            var sourceNames = res.sources;
+            var users = res.users;
+            var entitlements = res.entitlements;
+            String usersToken = exportStore.put(out -> CsvExport.csvUserPresence(out, sourceNames, users),
+                    "users_by_source.csv", CsvExport.estimateBytes(users));
+            String entsToken = exportStore.put(out -> CsvExport.csvEntPresence(out, sourceNames, entitlements),
+                    "entitlements_by_source.csv", CsvExport.estimateBytes(entitlements));
+
+            long usersPartial = res.users.stream().filter(u -> !res.inAll(u.sources)).count();
+            long entsPartial = res.entitlements.stream().filter(e -> !res.inAll(e.sources)).count();
 
             String inner = """
                 <div class="wrap">
                   <div class="results">
                     <div class="card">
-                      <div class="card-title">Results</div>
-                      %s
+                      <div class="card-title">N-way results</div>
+                      <div class="summary">
+                        <div class="kpi"><div class="k">Sources</div><div class="v">%d</div></div>
+                        <div class="kpi"><div class="k">User names</div><div class="v">%d</div></div>
+                        <div class="kpi"><div class="k">User names not in all</div><div class="v">%d</div></div>
+                        <div class="kpi"><div class="k">Entitlements</div><div class="v">%d</div></div>
+                        <div class="kpi"><div class="k">Entitlements not in all</div><div class="v">%d</div></div>
+                      </div>
+                      <div class="note">%s</div>
                       <div class="downloads">
-                        <a class="chip" href="/download/%s">Download users_added.csv</a>
-                        <a class="chip" href="/download/%s">Download users_removed.csv</a>
-                        <a class="chip" href="/download/%s">Download users_changes.csv</a>
-                        <a class="chip" href="/download/%s">Download entitlements_added.csv</a>
-                        <a class="chip" href="/download/%s">Download entitlements_removed.csv</a>
+                        <a class="chip" href="/download/%s">Download users_by_source.csv</a>
+                        <a class="chip" href="/download/%s">Download entitlements_by_source.csv</a>
                       </div>
 
                       <div style="margin-top:14px;">
@@ -119,115 +414,525 @@ public class MainController {
                   </div>
                 </div>
                 """.formatted(
-                    renderSummary(res),
-                    escape(usersAddedToken),
-                    escape(usersRemovedToken),
-                    escape(userChangesToken),
-                    escape(entAddedToken),
-                    escape(entRemovedToken)
+                    res.sources.size(),
+                    res.users.size(),
+                    usersPartial,
+                    res.entitlements.size(),
+                    entsPartial,
+                    escape(String.join(" · ", res.sources)),
+                    escape(usersToken),
+                    escape(entsToken)
             );
 
-            return pageShell("Results", inner);
+            return pageShell("N-way results", inner);
 
         } catch (Exception e) {
-            return pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(e.getMessage()))));
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(cause.getMessage()))));
         }
     }
 
-    @GetMapping("/download/{token}")
-    public void download(@PathVariable String token, HttpServletResponse response) throws Exception {
-        var stored = exportStore.get(token);
-        if (stored == null) {
-            response.setStatus(404);
-            response.getWriter().write("Not found or expired");
-            return;
+    // Registers the five CSVs (and the zip of them) and the result itself for browsing, and
+    // renders the summary page
+    private String resultsPage(DiffResult res) {
+        return resultsPage(res, null);
+    }
+
+    // notice: HTML shown above the counts (e.g. a save that failed after the diff), or null
+    private String resultsPage(DiffResult res, String notice) {
+        String resultToken = results.put(res);
+
+        // CSV exports (χωρίς opencsv dependency), written only when downloaded
+        // Each export holds only its own list. The lists stay reachable through the retained
+        // result (results.put above) until it is evicted, so spilling an export frees nothing on
+        // its own; results.max-mb is what bounds these rows.
+        var usersAdded = res.usersAdded;
+        var usersRemoved = res.usersRemoved;
+        var userChanges = res.userFieldChanges;
+        var entAdded = res.entAdded;
+        var entRemoved = res.entRemoved;
+        String usersAddedToken = exportStore.put(out -> CsvExport.csvUsers(out, usersAdded),
+                "users_added.csv", CsvExport.estimateBytes(usersAdded));
+        String usersRemovedToken = exportStore.put(out -> CsvExport.csvUsers(out, usersRemoved),
+                "users_removed.csv", CsvExport.estimateBytes(usersRemoved));
+        String userChangesToken = exportStore.put(out -> CsvExport.csvUserChanges(out, userChanges),
+                "users_changes.csv", CsvExport.estimateBytes(userChanges));
+        String entAddedToken = exportStore.put(out -> CsvExport.csvEnt(out, entAdded),
+                "entitlements_added.csv", CsvExport.estimateBytes(entAdded));
+        String entRemovedToken = exportStore.put(out -> CsvExport.csvEnt(out, entRemoved),
+                "entitlements_removed.csv", CsvExport.estimateBytes(entRemoved));
+        String bundleToken = exportStore.putBundle("access_review_diff.zip", List.of(
+                usersAddedToken, usersRemovedToken, userChangesToken, entAddedToken, entRemovedToken));
+
+        String inner = """
+            <div class="wrap">
+              <div class="results">
+                <div class="card">
+                  <div class="card-title">Results</div>
+                  %s
+                  <div class="downloads">%s</div>
+                  <div class="downloads">
+                    <a class="chip" href="/download/%s">Download users_added.csv</a>
+                    <a class="chip" href="/download/%s">Download users_removed.csv</a>
+                    <a class="chip" href="/download/%s">Download users_changes.csv</a>
+                    <a class="chip" href="/download/%s">Download entitlements_added.csv</a>
+                    <a class="chip" href="/download/%s">Download entitlements_removed.csv</a>
+                    <a class="chip" href="/download-all/%s">Download all (.zip)</a>
+                  </div>
+
+                  <div style="margin-top:14px;">
+                    <a class="link" href="/">← Back</a>
+                  </div>
+                </div>
+              </div>
+            </div>
+            """.formatted(
+                (notice == null ? "" : "<div class=\"error\">" + notice + "</div>") + renderSummary(res),
+                resultToken == null ? "" : browseLinks(resultToken, null),
+                escape(usersAddedToken),
+                escape(usersRemovedToken),
+                escape(userChangesToken),
+                escape(entAddedToken),
+                escape(entRemovedToken),
+                escape(bundleToken)
+        );
+
+        return pageShell("Results", inner);
+    }
+
+    // Same compare as /compare, run as a background job; answers with the job page right away
+    @PostMapping(value = "/jobs/compare", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<String> submitCompare(MultipartHttpServletRequest request) {
+        // A place in the queue is taken before the files are touched: multipart is resolved
+        // lazily, so a full queue is answered before the upload is stored or copied.
+        CompareJobs.Slot slot;
+        try {
+            slot = jobs.reserve();
+        } catch (RejectedExecutionException e) {
+            return queueFull();
         }
 
-        // υποθέτουμε ότι ExportStore.get επιστρέφει object με filename() και bytes()
-        String filename = safe(stringProp(stored, "filename"));
-        byte[] bytes = bytesProp(stored, "bytes");
+        // the request's multipart files go away with the request, the job works on its own copies
+        ExcelParser.Upload oldUp = null;
+        ExcelParser.Upload newUp = null;
+        try (slot) {
+            MultipartFile oldFile = request.getFile("oldFile");
+            MultipartFile newFile = request.getFile("newFile");
+            if (oldFile == null || oldFile.isEmpty() || newFile == null || newFile.isEmpty()) {
+                return html(HttpStatus.BAD_REQUEST, pageShell("Σφάλμα", errorBox("Παρακαλώ ανέβασε και τα δύο αρχεία (old & new).")));
+            }
+            oldUp = parser.spool(oldFile);
+            newUp = parser.spool(newFile);
+            ExcelParser.Upload o = oldUp;
+            ExcelParser.Upload n = newUp;
+            CompareJobs.Job job = jobs.submit(slot, j -> runCompare(j, o, n));
+            return ResponseEntity.status(HttpStatus.SEE_OTHER).location(URI.create("/jobs/" + job.id())).build();
+        } catch (RejectedExecutionException e) {
+            // the executor queue can still be full for a moment: a worker releases its permit
+            // before it takes the next task
+            closeQuietly(oldUp, newUp);
+            return queueFull();
+        } catch (Exception e) {
+            closeQuietly(oldUp, newUp);
+            return html(HttpStatus.OK, pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(e.getMessage())))));
+        }
+    }
 
-        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-        response.setContentType("text/csv; charset=utf-8");
-        response.getOutputStream().write(bytes);
+    private ResponseEntity<String> queueFull() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .contentType(MediaType.TEXT_HTML)
+                .body(pageShell("Σφάλμα", errorBox("Υπάρχουν ήδη πολλές συγκρίσεις σε εξέλιξη, δοκίμασε ξανά σε λίγο.")));
     }
 
-    // -----------------------------
-    // CSV helpers (no OpenCSV)
-    // -----------------------------
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<String> jobPage(@PathVariable String id) {
+        CompareJobs.Job job = jobs.get(id);
+        if (job == null) {
+            return html(HttpStatus.NOT_FOUND, pageShell("Σφάλμα", errorBox("Η εργασία δεν βρέθηκε ή έληξε.")));
+        }
+        CompareJobs.Status st = job.status();
+        if (st.phase() == CompareJobs.Phase.DONE) return html(HttpStatus.OK, job.resultHtml());
+        if (st.phase() == CompareJobs.Phase.FAILED) {
+            return html(HttpStatus.OK, pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(st.error()))));
+        }
 
-    private byte[] csvUsers(List<?> rows) {
-        return csvFromRows(
-                new String[]{"UserID", "Name"},
-                rows,
-                new String[]{"userId", "name"}
-        );
+        StringBuilder sheets = new StringBuilder();
+        st.rowsBySheet().entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e ->
+                sheets.append("<div class=\"kpi\"><div class=\"k\">").append(escape(e.getKey()))
+                        .append("</div><div class=\"v\">").append(e.getValue()).append("</div></div>"));
+
+        String inner = """
+            <div class="wrap">
+              <div class="results">
+                <div class="card">
+                  <div class="card-title">Compare σε εξέλιξη: %s</div>
+                  <div class="note">%.1f s · η σελίδα ανανεώνεται αυτόματα</div>
+                  <div class="summary">%s</div>
+                </div>
+              </div>
+            </div>
+            """.formatted(escape(st.phase().name()), st.elapsedMs() / 1000.0, sheets);
+        // the browser polls by reloading until the job is done
+        return ResponseEntity.ok().header("Refresh", "2").contentType(MediaType.TEXT_HTML).body(pageShell("Compare job", inner));
     }
 
-    private byte[] csvUserChanges(List<?> rows) {
-        return csvFromRows(
-                new String[]{"UserID", "Name", "Field", "OldValue", "NewValue"},
-                rows,
-                new String[]{"userId", "name", "field", "oldValue", "newValue"}
-        );
+    @GetMapping("/jobs/{id}/status")
+    public ResponseEntity<CompareJobs.Status> jobStatus(@PathVariable String id) {
+        CompareJobs.Job job = jobs.get(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.status());
     }
 
-    private byte[] csvEnt(List<?> rows) {
-        return csvFromRows(
-                new String[]{"UserID", "Name", "Application", "Role"},
-                rows,
-                new String[]{"userId", "name", "app", "role"}
-        );
+    private String runCompare(CompareJobs.Job job, ExcelParser.Upload oldUp, ExcelParser.Upload newUp) {
+        try (oldUp; newUp) {
+            job.phase(CompareJobs.Phase.PARSING);
+            boolean external = oldUp.size() + newUp.size() > externalThresholdBytes;
+            CompareMetrics.Run run = metrics.start(external ? "external" : "memory");
+            Runnable parsed = () -> {
+                run.parsed();
+                job.phase(CompareJobs.Phase.DIFFING);
+            };
+
+            try {
+                DiffResult res = external
+                        ? diffExternal(
+                                sink -> parser.streamAllSheets(oldUp, sink, job.progress("old")),
+                                sink -> parser.streamAllSheets(newUp, sink, job.progress("new")),
+                                parsed)
+                        : diffInMemory(
+                                () -> parser.parseAllSheets(oldUp, job.progress("old")),
+                                () -> parser.parseAllSheets(newUp, job.progress("new")),
+                                parsed);
+                run.diffed(res);
+
+                job.phase(CompareJobs.Phase.EXPORTING);
+                String page = resultsPage(res);
+                run.exported();
+                run.finished(true);
+                return page;
+            } catch (RuntimeException e) {
+                run.finished(false);
+                throw e;
+            }
+        }
     }
 
-    private byte[] csvFromRows(String[] header, List<?> rows, String[] props) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             OutputStreamWriter out = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+    // parsed: called once both sides are parsed, before the diff itself
+    private DiffResult diffInMemory(Supplier<List<EntitlementRecord>> oldFile, Supplier<List<EntitlementRecord>> newFile,
+                                    Runnable parsed) {
+        // Both files parse at the same time; the old side is indexed as soon as it is ready
+        var oldSide = CompletableFuture
+                .supplyAsync(oldFile, uploadExecutor)
+                .thenApply(diff::index);
+        var newRecs = CompletableFuture
+                .supplyAsync(newFile, uploadExecutor);
 
-            out.write(csvLine(header));
-            out.write("\n");
+        // wait for both, so nothing still reads the uploads after the request ends
+        CompletableFuture.allOf(oldSide, newRecs).exceptionally(ex -> null).join();
+        parsed.run();
+
+        return diff.compare(oldSide.join(), newRecs.join());
+    }
 
-            for (Object r : rows) {
-                String[] cols = new String[props.length];
-                for (int i = 0; i < props.length; i++) {
-                    cols[i] = safe(stringProp(r, props[i]));
+    private DiffResult diffExternal(DiffService.RecordSource oldFile, DiffService.RecordSource newFile, Runnable parsed) {
+        // records go straight from the sheet XML into sorted runs, nothing is materialized;
+        // the new side is read last, after it only the merge pass is left
+        return diff.compareExternal(oldFile, thenRun(newFile, parsed), externalBudgetBytes);
+    }
+
+    private static DiffService.RecordSource thenRun(DiffService.RecordSource source, Runnable after) {
+        return sink -> {
+            source.forEach(sink);
+            after.run();
+        };
+    }
+
+    @PostMapping(
+            value = "/snapshots",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public String saveSnapshot(@RequestParam("file") MultipartFile file,
+                               @RequestParam(value = "label", required = false) String label) {
+        if (file == null || file.isEmpty()) {
+            return pageShell("Σφάλμα", errorBox("Παρακαλώ ανέβασε το baseline αρχείο."));
+        }
+        try {
+            SnapshotStore.Info info = snapshots.save(label, parser.parseTable(file, new StringDictionary()));
+            String inner = """
+                <div class="wrap">
+                  <div class="results">
+                    <div class="card">
+                      <div class="card-title">Snapshot saved</div>
+                      <div class="note">Id: <b>%s</b> · %d entitlements · %d bytes</div>
+                      <div style="margin-top:14px;">
+                        <a class="link" href="/">← Back</a>
+                      </div>
+                    </div>
+                  </div>
+                </div>
+                """.formatted(escape(info.id()), info.rows(), info.bytes());
+            return pageShell("Snapshot saved", inner);
+        } catch (Exception e) {
+            return pageShell("Σφάλμα", errorBox("Το snapshot δεν αποθηκεύτηκε: " + escape(String.valueOf(e.getMessage()))));
+        }
+    }
+
+    @GetMapping("/snapshots")
+    public List<SnapshotStore.Info> listSnapshots() {
+        return snapshots.list();
+    }
+
+    @PostMapping(
+            value = "/compare-snapshot",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public String compareSnapshot(@RequestParam("snapshotId") String snapshotId,
+                                  @RequestParam("newFile") MultipartFile newFile,
+                                  @RequestParam(value = "period", required = false) String period) {
+        if (newFile == null || newFile.isEmpty()) {
+            return pageShell("Σφάλμα", errorBox("Παρακαλώ ανέβασε το new αρχείο."));
+        }
+        // a period that can't be saved is refused before anything is parsed
+        String nextPeriod = period == null || period.isBlank() ? null : period.trim();
+        if (nextPeriod != null) {
+            if (!SnapshotStore.isValidId(nextPeriod)) {
+                return pageShell("Σφάλμα", errorBox("Μη έγκυρη περίοδος: " + escape(nextPeriod)));
+            }
+            if (snapshots.exists(nextPeriod)) {
+                return pageShell("Σφάλμα", errorBox("Η περίοδος υπάρχει ήδη: " + escape(nextPeriod)));
+            }
+        }
+        CompareMetrics.Run run = metrics.start("snapshot");
+        try {
+            // the baseline is mapped from disk while the new file parses
+            var oldTab = CompletableFuture.supplyAsync(() -> snapshots.load(snapshotId), uploadExecutor);
+            // the new file goes straight into columns, no record list is built
+            var newTab = CompletableFuture.supplyAsync(() -> parser.parseTable(newFile, new StringDictionary()), uploadExecutor);
+            CompletableFuture.allOf(oldTab, newTab).exceptionally(ex -> null).join();
+            run.parsed();
+
+            DiffResult res = diff.compare(oldTab.join(), newTab.join());
+            run.diffed(res);
+
+            // With a period the new file becomes the next baseline and the diff the period's delta.
+            // The delta goes first and is removed again if the snapshot fails, so a failed period
+            // can simply be retried; either way the diff itself is still shown.
+            String notice = null;
+            if (nextPeriod != null) {
+                try {
+                    deltas.save(snapshotId, nextPeriod, res);
+                    try {
+                        snapshots.save(nextPeriod, newTab.join());
+                    } catch (RuntimeException e) {
+                        deltas.delete(nextPeriod);
+                        throw e;
+                    }
+                } catch (RuntimeException e) {
+                    notice = "Η περίοδος " + escape(nextPeriod) + " δεν αποθηκεύτηκε: " + escape(String.valueOf(e.getMessage()));
                 }
-                out.write(csvLine(cols));
-                out.write("\n");
             }
-            out.flush();
-            return baos.toByteArray();
+            String page = resultsPage(res, notice);
+            run.exported();
+            run.finished(true);
+            return page;
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            run.finished(false);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(cause.getMessage()))));
         }
     }
 
-    private String csvLine(String[] cols) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cols.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(csvCell(cols[i]));
+    @GetMapping(value = "/deltas/net", produces = MediaType.TEXT_HTML_VALUE)
+    public String netChange(@RequestParam("from") String from, @RequestParam("to") String to) {
+        try {
+            return resultsPage(diff.compose(deltas.chain(from, to)));
+        } catch (Exception e) {
+            return pageShell("Σφάλμα", errorBox("Κάτι πήγε στραβά στην επεξεργασία: " + escape(String.valueOf(e.getMessage()))));
         }
-        return sb.toString();
     }
 
-    private String csvCell(String s) {
-        if (s == null) return "";
-        boolean needsQuotes = s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r");
-        String v = s.replace("\"", "\"\"");
-        return needsQuotes ? "\"" + v + "\"" : v;
+    @GetMapping("/deltas")
+    public List<DeltaStore.Info> listDeltas() {
+        return deltas.list();
+    }
+
+    // A page of one list of a retained result (see DiffResultStore), filtered through its indexes
+    @GetMapping("/api/results/{token}/{kind}")
+    public ResponseEntity<DiffIndex.Page> resultRows(@PathVariable String token, @PathVariable String kind,
+                                                     @RequestParam(required = false) String userId,
+                                                     @RequestParam(required = false) String app,
+                                                     @RequestParam(required = false) String role,
+                                                     @RequestParam(defaultValue = "0") int offset,
+                                                     @RequestParam(defaultValue = "100") int limit) {
+        DiffIndex index = results.get(token);
+        DiffIndex.Kind k = DiffIndex.Kind.of(kind);
+        if (index == null || k == null) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(index.query(k, new DiffIndex.Filter(app, role, userId), offset, pageLimit(limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Same as a table, with a filter form and previous / next links; ids, apps and roles link to
+    // the list filtered by them
+    @GetMapping(value = "/results/{token}/{kind}", produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<String> resultTable(@PathVariable String token, @PathVariable String kind,
+                                              @RequestParam(required = false) String userId,
+                                              @RequestParam(required = false) String app,
+                                              @RequestParam(required = false) String role,
+                                              @RequestParam(defaultValue = "0") int offset,
+                                              @RequestParam(defaultValue = "100") int limit) {
+        DiffIndex index = results.get(token);
+        DiffIndex.Kind k = DiffIndex.Kind.of(kind);
+        if (index == null || k == null) {
+            return html(HttpStatus.NOT_FOUND, pageShell("Σφάλμα", errorBox("Το αποτέλεσμα δεν βρέθηκε ή έληξε.")));
+        }
+        DiffIndex.Filter filter = new DiffIndex.Filter(app, role, userId);
+        DiffIndex.Page page;
+        try {
+            page = index.query(k, filter, offset, pageLimit(limit));
+        } catch (IllegalArgumentException e) {
+            return html(HttpStatus.BAD_REQUEST, pageShell("Σφάλμα", errorBox(escape(e.getMessage()))));
+        }
+
+        StringBuilder rows = new StringBuilder();
+        for (Object row : page.rows()) {
+            rows.append("<tr>");
+            if (row instanceof DiffResult.EntChange c) {
+                cell(rows, c.userId, browseUrl(token, k, new DiffIndex.Filter(null, null, c.userId), 0));
+                cell(rows, c.name, null);
+                cell(rows, c.app, browseUrl(token, k, new DiffIndex.Filter(c.app, null, null), 0));
+                cell(rows, c.role, browseUrl(token, k, new DiffIndex.Filter(c.app, c.role, null), 0));
+            } else if (row instanceof DiffResult.UserFieldChange c) {
+                cell(rows, c.userId, browseUrl(token, k, new DiffIndex.Filter(null, null, c.userId), 0));
+                cell(rows, c.name, null);
+                cell(rows, c.field, null);
+                cell(rows, c.oldValue, null);
+                cell(rows, c.newValue, null);
+            } else {
+                DiffResult.UserChange c = (DiffResult.UserChange) row;
+                cell(rows, c.userId, browseUrl(token, k, new DiffIndex.Filter(null, null, c.userId), 0));
+                cell(rows, c.name, null);
+            }
+            rows.append("</tr>");
+        }
+        String header = switch (k) {
+            case ENT_ADDED, ENT_REMOVED -> "<th>User ID</th><th>Name</th><th>App</th><th>Role</th>";
+            case USER_CHANGES -> "<th>User ID</th><th>Name</th><th>Field</th><th>Old value</th><th>New value</th>";
+            default -> "<th>User ID</th><th>Name</th>";
+        };
+
+        StringBuilder form = new StringBuilder()
+                .append("<form class=\"filters\" method=\"get\" action=\"/results/").append(escape(token)).append('/').append(k.slug).append("\">")
+                .append("<input name=\"userId\" placeholder=\"User ID\" value=\"").append(escape(filter.userId())).append("\"/>");
+        if (k.entitlements) {
+            form.append("<input name=\"app\" placeholder=\"App\" value=\"").append(escape(filter.app())).append("\"/>")
+                    .append("<input name=\"role\" placeholder=\"Role\" value=\"").append(escape(filter.role())).append("\"/>");
+        }
+        form.append("<button class=\"btn\" type=\"submit\">Filter</button></form>");
+
+        int from = Math.min(page.offset(), page.total());
+        int to = Math.min(page.total(), from + page.rows().size());
+        StringBuilder pager = new StringBuilder();
+        if (from > 0) {
+            pager.append("<a class=\"chip\" href=\"").append(escape(browseUrl(token, k, filter, Math.max(0, from - page.limit()), page.limit())))
+                    .append("\">← Previous</a>");
+        }
+        if (to < page.total()) {
+            pager.append("<a class=\"chip\" href=\"").append(escape(browseUrl(token, k, filter, to, page.limit())))
+                    .append("\">Next →</a>");
+        }
+
+        String inner = """
+            <div class="wrap">
+              <div class="results">
+                <div class="card">
+                  <div class="card-title">%s</div>
+                  <div class="downloads">%s</div>
+                  %s
+                  <div class="note">%d–%d of %d</div>
+                  <table class="rows"><thead><tr>%s</tr></thead><tbody>%s</tbody></table>
+                  <div class="downloads">%s</div>
+
+                  <div style="margin-top:14px;">
+                    <a class="link" href="/">← Back</a>
+                  </div>
+                </div>
+              </div>
+            </div>
+            """.formatted(
+                escape(k.title),
+                browseLinks(token, k),
+                form,
+                page.total() == 0 ? 0 : from + 1, to, page.total(),
+                header,
+                rows,
+                pager
+        );
+        return html(HttpStatus.OK, pageShell(k.title, inner));
+    }
+
+    @GetMapping("/exports/stats")
+    public ExportStore.Stats exportStats() {
+        return exportStore.stats();
+    }
+
+    @GetMapping("/download/{token}")
+    public void download(@PathVariable String token,
+                         @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+                         HttpServletResponse response) throws Exception {
+        var stored = exportStore.get(token, ExportStore.Kind.CSV);
+        if (stored == null) {
+            response.setStatus(404);
+            response.getWriter().write("Not found or expired");
+            return;
+        }
+
+        String filename = safe(stored.filename());
+
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+        response.setContentType("text/csv; charset=utf-8");
+        response.setHeader("Vary", "Accept-Encoding");
+        // streamed from the retained DiffResult (or the spilled .gz as is), no byte[] copy of the file
+        long start = System.nanoTime();
+        boolean gzip = acceptsGzip(acceptEncoding);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            stored.gzipContent().writeTo(response.getOutputStream());
+        } else {
+            stored.content().writeTo(response.getOutputStream());
+        }
+        metrics.downloaded(gzip ? "gzip" : "identity", System.nanoTime() - start);
+    }
+
+    @GetMapping("/download-all/{token}")
+    public void downloadAll(@PathVariable String token, HttpServletResponse response) throws Exception {
+        var stored = exportStore.get(token, ExportStore.Kind.BUNDLE);
+        if (stored == null) {
+            response.setStatus(404);
+            response.getWriter().write("Not found or expired");
+            return;
+        }
+
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + safe(stored.filename()) + "\"");
+        response.setContentType("application/zip");
+        // all five CSVs, each written into the zip as it is produced
+        stored.content().writeTo(response.getOutputStream());
     }
 
     // -----------------------------
     // Rendering helpers
     // -----------------------------
 
-    private String renderSummary(Object res) {
-        int usersAdded = sizeOf(getList(res, "usersAdded"));
-        int usersRemoved = sizeOf(getList(res, "usersRemoved"));
-        int userChanges = sizeOf(getList(res, "userFieldChanges"));
-        int entAdded = sizeOf(getList(res, "entAdded"));
-        int entRemoved = sizeOf(getList(res, "entRemoved"));
+    private String renderSummary(DiffResult res) {
+        int usersAdded = res.usersAdded.size();
+        int usersRemoved = res.usersRemoved.size();
+        int userChanges = res.userFieldChanges.size();
+        int entAdded = res.entAdded.size();
+        int entRemoved = res.entRemoved.size();
 
         return """
             <div class="summary">
@@ -240,8 +945,92 @@ public class MainController {
             """.formatted(usersAdded, usersRemoved, userChanges, entAdded, entRemoved);
     }
 
-    private int sizeOf(List<?> list) {
-        return list == null ? 0 : list.size();
+    // one chip per list of a retained result, current marks the one shown
+    private String browseLinks(String token, DiffIndex.Kind current) {
+        StringBuilder sb = new StringBuilder();
+        for (DiffIndex.Kind k : DiffIndex.Kind.values()) {
+            sb.append("<a class=\"chip").append(k == current ? " current" : "").append("\" href=\"")
+                    .append(escape(browseUrl(token, k, new DiffIndex.Filter(null, null, null), 0)))
+                    .append("\">Browse ").append(escape(k.title.toLowerCase(Locale.ROOT))).append("</a>");
+        }
+        return sb.toString();
+    }
+
+    private static String browseUrl(String token, DiffIndex.Kind kind, DiffIndex.Filter filter, int offset) {
+        return browseUrl(token, kind, filter, offset, 100);
+    }
+
+    private static String browseUrl(String token, DiffIndex.Kind kind, DiffIndex.Filter filter, int offset, int limit) {
+        StringBuilder url = new StringBuilder("/results/").append(token).append('/').append(kind.slug)
+                .append("?offset=").append(offset).append("&limit=").append(limit);
+        if (filter.userId() != null) url.append("&userId=").append(URLEncoder.encode(filter.userId(), StandardCharsets.UTF_8));
+        if (filter.app() != null) url.append("&app=").append(URLEncoder.encode(filter.app(), StandardCharsets.UTF_8));
+        if (filter.role() != null) url.append("&role=").append(URLEncoder.encode(filter.role(), StandardCharsets.UTF_8));
+        return url.toString();
+    }
+
+    private void cell(StringBuilder row, String value, String href) {
+        row.append("<td>");
+        if (href != null) row.append("<a class=\"link\" href=\"").append(escape(href)).append("\">");
+        row.append(escape(value));
+        if (href != null) row.append("</a>");
+        row.append("</td>");
+    }
+
+    // 1..1000 rows a page
+    private static int pageLimit(int limit) {
+        return Math.max(1, Math.min(limit, 1000));
+    }
+
+    // Accept-Encoding with q-values: "gzip;q=0" refuses it, "*" stands for codings not listed
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        Double gzip = null, any = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] p = part.split(";");
+            String coding = p[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) gzip = q;
+            else if (coding.equals("*")) any = q;
+        }
+        if (gzip != null) return gzip > 0;
+        return any != null && any > 0;
+    }
+
+    private static ResponseEntity<String> html(HttpStatus status, String body) {
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_HTML).body(body);
+    }
+
+    private static void closeQuietly(ExcelParser.Upload... uploads) {
+        for (ExcelParser.Upload u : uploads) {
+            if (u != null) u.close();
+        }
+    }
+
+    // the home page still renders when the snapshot directory can't be read, just without options
+    private String snapshotOptions() {
+        List<SnapshotStore.Info> list;
+        try {
+            list = snapshots.list();
+        } catch (UncheckedIOException e) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (SnapshotStore.Info info : list) {
+            sb.append("<option value=\"").append(escape(info.id())).append("\">")
+                    .append(escape(info.id())).append(" (").append(info.rows()).append(")</option>");
+        }
+        return sb.toString();
     }
 
     private String errorBox(String msg) {
@@ -285,8 +1074,8 @@ public class MainController {
                   margin:0;
                   font-family: ui-sans-serif, system-ui, -apple-system, Segoe UI, Roboto, Helvetica, Arial;
                   background:
-                    radial-gradient(900px 500px at 15% 10%, rgba(122,162,255,.25), transparent 60%),
-                    radial-gradient(700px 500px at 80% 20%, rgba(142,240,213,.18), transparent 55%),
+                    radial-gradient(900px 500px at 15%% 10%%, rgba(122,162,255,.25), transparent 60%%),
+                    radial-gradient(700px 500px at 80%% 20%%, rgba(142,240,213,.18), transparent 55%%),
                     var(--bg);
                   color:var(--text);
                 }
@@ -319,7 +1108,7 @@ public class MainController {
                   padding:12px;
                 }
                 label{display:block;font-size:12px;color:var(--muted);margin-bottom:8px}
-                input[type="file"]{width:100%;color:var(--text)}
+                input[type="file"],input[type="text"],select{width:100%%;color:var(--text)}
                 .btn{
                   margin-top:12px;
                   border:0;
@@ -382,6 +1171,19 @@ public class MainController {
                 }
                 .link{color:var(--accent);text-decoration:none}
                 .link:hover{text-decoration:underline}
+                .chip.current{border-color: rgba(122,162,255,.55);color:var(--accent)}
+                .filters{display:flex;flex-wrap:wrap;gap:8px;align-items:center;margin-top:12px}
+                .filters .btn{margin-top:0}
+                .filters input{
+                  padding:8px 10px;
+                  border-radius:10px;
+                  border:1px solid var(--border);
+                  background: rgba(0,0,0,.18);
+                  color:var(--text);
+                }
+                .rows{width:100%%;border-collapse:collapse;font-size:13px;margin-top:8px}
+                .rows th{text-align:left;color:var(--muted);font-weight:600}
+                .rows th, .rows td{padding:7px 8px;border-bottom:1px solid var(--border)}
               </style>
             </head>
             <body>
@@ -407,50 +1209,4 @@ public class MainController {
                 .replace("\"", "&quot;")
                 .replace("'", "&#39;");
     }
-
-    // -----------------------------
-    // Reflection helpers: works for record accessors OR fields
-    // -----------------------------
-
-    @SuppressWarnings("unchecked")
-    private List<?> getList(Object obj, String name) {
-        if (obj == null) return List.of();
-        Object v = prop(obj, name);
-        if (v instanceof List<?> list) return list;
-        return List.of();
-    }
-
-    private String stringProp(Object obj, String name) {
-        Object v = prop(obj, name);
-        return v == null ? "" : String.valueOf(v);
-    }
-
-    private byte[] bytesProp(Object obj, String name) {
-        Object v = prop(obj, name);
-        if (v instanceof byte[] b) return b;
-        return new byte[0];
-    }
-
-    private Object prop(Object obj, String name) {
-        try {
-            // 1) record accessor / method with same name: userId()
-            var m1 = obj.getClass().getMethod(name);
-            return m1.invoke(obj);
-        } catch (Exception ignored) { }
-
-        try {
-            // 2) getter: getUserId()
-            String getter = "get" + name.substring(0,1).toUpperCase(Locale.ROOT) + name.substring(1);
-            var m2 = obj.getClass().getMethod(getter);
-            return m2.invoke(obj);
-        } catch (Exception ignored) { }
-
-        try {
-            // 3) public field: userId
-            var f = obj.getClass().getField(name);
-            return f.get(obj);
-        } catch (Exception ignored) { }
-
-        return null;
-    }
 }
@@ -0,0 +1,232 @@
+package org.example.democolauam;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Reads a multipart/form-data body part by part straight off the request stream, so a part can
+// be consumed while the rest of the upload is still arriving (the servlet multipart support
+// stores every part before the controller runs). Byte limits are enforced while reading.
+final class MultipartStream {
+
+    // a part or the whole body is over its limit
+    static final class TooLarge extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge(String message) {
+            super(message);
+        }
+    }
+
+    record Part(String name, String filename, InputStream body) {}
+
+    private static final int BUFFER = 1 << 16;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final long maxPartBytes;
+    private final long maxTotalBytes;
+
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+    private long total;
+    private boolean eof;
+    private boolean done;
+    private PartStream current;
+
+    MultipartStream(InputStream in, String boundary, long maxPartBytes, long maxTotalBytes) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxPartBytes = maxPartBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.buf = new byte[Math.max(BUFFER, delimiter.length * 2)];
+        // the first delimiter has no CRLF in front of it
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+    }
+
+    // boundary parameter of a multipart Content-Type, null if there is none
+    static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) return null;
+        for (String param : contentType.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String b = p.substring(9).trim();
+                if (b.length() > 1 && b.startsWith("\"") && b.endsWith("\"")) b = b.substring(1, b.length() - 1);
+                return b.isEmpty() || b.length() > 70 ? null : b;
+            }
+        }
+        return null;
+    }
+
+    // The next part, or null after the closing boundary; whatever is left of the previous part
+    // is skipped. The body stream ends at the part's boundary.
+    Part next() throws IOException {
+        if (done) return null;
+        if (current != null) {
+            current.skipRest();
+        } else {
+            skipTo(Long.MAX_VALUE); // preamble
+        }
+        if (!afterDelimiter()) {
+            done = true;
+            return null;
+        }
+
+        String name = null, filename = null;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Disposition")) {
+                name = param(line, "name");
+                filename = param(line, "filename");
+            }
+        }
+        current = new PartStream();
+        return new Part(name, filename, current);
+    }
+
+    // "--" closes the body, CRLF starts another part (transport padding before it is allowed)
+    private boolean afterDelimiter() throws IOException {
+        if (!ensure(2)) return false;
+        if (buf[pos] == '-' && buf[pos + 1] == '-') return false;
+        while (ensure(1) && (buf[pos] == ' ' || buf[pos] == '\t')) pos++;
+        if (!ensure(2) || buf[pos] != '\r' || buf[pos + 1] != '\n') throw new IOException("Malformed multipart body");
+        pos += 2;
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        while (true) {
+            if (!ensure(1)) throw new IOException("Malformed multipart body");
+            byte b = buf[pos++];
+            if (b == '\n') break;
+            if (line.size() >= MAX_HEADER_BYTES) throw new IOException("Multipart header too long");
+            line.write(b);
+        }
+        String s = line.toString(StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    // name="value" of a Content-Disposition header
+    private static String param(String header, String name) {
+        for (String p : header.split(";")) {
+            String t = p.trim();
+            int eq = t.indexOf('=');
+            if (eq < 0 || !t.substring(0, eq).trim().equalsIgnoreCase(name)) continue;
+            String v = t.substring(eq + 1).trim();
+            if (v.length() > 1 && v.startsWith("\"") && v.endsWith("\"")) v = v.substring(1, v.length() - 1);
+            // browsers may send a full path
+            int slash = Math.max(v.lastIndexOf('/'), v.lastIndexOf('\\'));
+            return slash >= 0 ? v.substring(slash + 1) : v;
+        }
+        return null;
+    }
+
+    // Bytes of the current part available in buf from pos: up to the delimiter if it is there,
+    // otherwise all but a tail that could be its start. 0 means the delimiter is at pos.
+    private int partBytes() throws IOException {
+        while (true) {
+            int found = indexOfDelimiter();
+            if (found >= 0) return found - pos;
+            int safe = limit - pos - (delimiter.length - 1);
+            if (safe > 0) return safe;
+            if (!fill()) throw new IOException("Multipart body ended inside a part");
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        outer:
+        for (int i = pos, last = limit - delimiter.length; i <= last; i++) {
+            if (buf[i] != first) continue;
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // skips to the next delimiter and past it; maxBytes: how many may come before it
+    private void skipTo(long maxBytes) throws IOException {
+        long skipped = 0;
+        int n;
+        while ((n = partBytes()) > 0) {
+            pos += n;
+            skipped += n;
+            if (skipped > maxBytes) throw new TooLarge("Upload part is over " + maxPartBytes + " bytes");
+        }
+        pos += delimiter.length;
+    }
+
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        total += n;
+        if (maxTotalBytes > 0 && total > maxTotalBytes) throw new TooLarge("Upload is over " + maxTotalBytes + " bytes");
+        limit += n;
+        return true;
+    }
+
+    private final class PartStream extends InputStream {
+        private long read;
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended) return -1;
+            if (len == 0) return 0;
+            int n = partBytes();
+            if (n == 0) {
+                pos += delimiter.length;
+                ended = true;
+                return -1;
+            }
+            n = Math.min(n, len);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            read += n;
+            if (maxPartBytes > 0 && read > maxPartBytes) throw new TooLarge("Upload part is over " + maxPartBytes + " bytes");
+            return n;
+        }
+
+        void skipRest() throws IOException {
+            if (ended) return;
+            ended = true;
+            skipTo(maxPartBytes > 0 ? maxPartBytes - read : Long.MAX_VALUE);
+        }
+
+        @Override
+        public void close() {
+            // the request stream stays open for the next part
+        }
+    }
+}
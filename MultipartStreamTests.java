@@ -0,0 +1,213 @@
+package org.example.democolauam;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipartStreamTests {
+
+    private static final String BOUNDARY = "----form7MA4YWxk";
+
+    @Test
+    void boundaryFromContentType() {
+        assertEquals("abc", MultipartStream.boundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartStream.boundary("Multipart/Form-Data;charset=UTF-8; BOUNDARY=\"a b\""));
+        assertNull(MultipartStream.boundary("multipart/form-data"));
+        assertNull(MultipartStream.boundary("multipart/form-data; boundary="));
+        assertNull(MultipartStream.boundary("application/json; boundary=abc"));
+        assertNull(MultipartStream.boundary(null));
+    }
+
+    @Test
+    void partsWithPreambleAndEpilogue() throws IOException {
+        String body = "This is the preamble, ignored.\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"note\"\r\n\r\n"
+                + "hello\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "content-disposition: form-data; name=\"oldFile\"; filename=\"C:\\\\exports\\\\old.csv\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n"
+                // almost-delimiters inside the data
+                + "a,b\r\n--x\r\n\r\n--" + BOUNDARY.substring(0, 5) + "\r\n"
+                + "--" + BOUNDARY + "--\r\n"
+                + "epilogue, also ignored";
+        MultipartStream parts = stream(bytes(body), Integer.MAX_VALUE, 0, 0);
+
+        MultipartStream.Part note = parts.next();
+        assertEquals("note", note.name());
+        assertNull(note.filename());
+        assertEquals("hello", text(note.body()));
+
+        MultipartStream.Part file = parts.next();
+        assertEquals("oldFile", file.name());
+        assertEquals("old.csv", file.filename());
+        assertEquals("a,b\r\n--x\r\n\r\n--" + BOUNDARY.substring(0, 5), text(file.body()));
+
+        assertNull(parts.next());
+        assertNull(parts.next());
+    }
+
+    @Test
+    void unreadPartsAreSkipped() throws IOException {
+        MultipartStream parts = stream(body(part("a", "first"), part("b", "second")), Integer.MAX_VALUE, 0, 0);
+        assertEquals("a", parts.next().name());
+        MultipartStream.Part b = parts.next();
+        assertEquals("b", b.name());
+        assertEquals("second", text(b.body()));
+        assertNull(parts.next());
+    }
+
+    @Test
+    void transportPaddingAfterBoundary() throws IOException {
+        String body = "--" + BOUNDARY + " \t \r\n"
+                + "Content-Disposition: form-data; name=\"a\"\r\n\r\n"
+                + "x\r\n"
+                + "--" + BOUNDARY + "\t\r\n"
+                + "Content-Disposition: form-data; name=\"b\"\r\n\r\n"
+                + "y\r\n"
+                + "--" + BOUNDARY + "--";
+        MultipartStream parts = stream(bytes(body), Integer.MAX_VALUE, 0, 0);
+        assertEquals("x", text(parts.next().body()));
+        assertEquals("y", text(parts.next().body()));
+        assertNull(parts.next());
+    }
+
+    @Test
+    void delimiterSplitAcrossReads() throws IOException {
+        byte[] small = body(part("a", "x,y\r\n1,2"), part("b", "z"));
+        for (int chunk : new int[]{1, 2, 3, 7}) {
+            MultipartStream parts = stream(small, chunk, 0, 0);
+            assertEquals("x,y\r\n1,2", text(parts.next().body()), "chunk " + chunk);
+            assertEquals("z", text(parts.next().body()), "chunk " + chunk);
+            assertNull(parts.next());
+        }
+
+        // parts around the 64 KiB buffer size, so the delimiter lands on every offset of a refill
+        for (int size = (1 << 16) - 90; size < (1 << 16) + 10; size++) {
+            byte[] data = new byte[size];
+            Arrays.fill(data, (byte) 'd');
+            data[size - 1] = '\r';
+            MultipartStream parts = stream(body(part("a", data), part("b", "end")), 4093, 0, 0);
+            assertArrayEquals(data, parts.next().body().readAllBytes(), "size " + size);
+            assertEquals("end", text(parts.next().body()));
+            assertNull(parts.next());
+        }
+    }
+
+    @Test
+    void partOverLimit() throws IOException {
+        byte[] body = body(part("a", "0123456789"), part("b", "ok"));
+
+        MultipartStream exact = stream(body, Integer.MAX_VALUE, 10, 0);
+        assertEquals("0123456789", text(exact.next().body()));
+
+        MultipartStream read = stream(body, Integer.MAX_VALUE, 9, 0);
+        InputStream a = read.next().body();
+        assertThrows(MultipartStream.TooLarge.class, a::readAllBytes);
+
+        // also when the part is skipped instead of read
+        MultipartStream skipped = stream(body, Integer.MAX_VALUE, 9, 0);
+        skipped.next();
+        assertThrows(MultipartStream.TooLarge.class, skipped::next);
+    }
+
+    @Test
+    void bodyOverLimit() throws IOException {
+        byte[] body = body(part("a", "x".repeat(1000)));
+        assertEquals(1000, stream(body, 100, 0, body.length).next().body().readAllBytes().length);
+
+        MultipartStream parts = stream(body, 100, 0, body.length - 1);
+        IOException e = assertThrows(IOException.class, () -> parts.next().body().readAllBytes());
+        assertInstanceOf(MultipartStream.TooLarge.class, e);
+    }
+
+    @Test
+    void truncatedBody() throws IOException {
+        byte[] body = body(part("a", "abcdef"));
+
+        // cut inside the data: the part has no end
+        MultipartStream inData = stream(Arrays.copyOf(body, body.length - 20), 3, 0, 0);
+        InputStream a = inData.next().body();
+        IOException e = assertThrows(IOException.class, a::readAllBytes);
+        assertFalse(e instanceof MultipartStream.TooLarge);
+
+        // cut inside the part headers
+        String headers = "--" + BOUNDARY + "\r\nContent-Disposition: form-da";
+        assertThrows(IOException.class, () -> stream(bytes(headers), 3, 0, 0).next());
+
+        // no closing boundary after the last part: the body simply ends
+        MultipartStream open = stream(bytes("--" + BOUNDARY + "\r\n\r\nx\r\n--" + BOUNDARY), Integer.MAX_VALUE, 0, 0);
+        assertEquals("x", text(open.next().body()));
+        assertNull(open.next());
+
+        // nothing but a preamble
+        assertTrue(assertThrows(IOException.class, () -> stream(bytes("just text"), 2, 0, 0).next())
+                .getMessage().contains("ended"));
+    }
+
+    private static MultipartStream stream(byte[] body, int chunk, long maxPart, long maxTotal) {
+        return new MultipartStream(new ChunkedInputStream(body, chunk), BOUNDARY, maxPart, maxTotal);
+    }
+
+    private static byte[] part(String name, String data) {
+        return part(name, bytes(data));
+    }
+
+    private static byte[] part(String name, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(bytes("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name
+                + "\"; filename=\"" + name + ".csv\"\r\n\r\n"));
+        out.writeBytes(data);
+        out.writeBytes(bytes("\r\n"));
+        return out.toByteArray();
+    }
+
+    private static byte[] body(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.writeBytes(p);
+        out.writeBytes(bytes("--" + BOUNDARY + "--\r\n"));
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    // hands out at most chunk bytes per read, like a slow upload
+    private static final class ChunkedInputStream extends InputStream {
+        private final ByteArrayInputStream in;
+        private final int chunk;
+
+        ChunkedInputStream(byte[] data, int chunk) {
+            this.in = new ByteArrayInputStream(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
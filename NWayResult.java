@@ -0,0 +1,49 @@
+package org.example.democolauam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Presence of every user name and entitlement across N sources; bit i of `sources` = sources.get(i)
+public class NWayResult {
+
+    public final List<String> sources;
+    public final List<UserPresence> users = new ArrayList<>();
+    public final List<EntPresence> entitlements = new ArrayList<>();
+
+    public NWayResult(List<String> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    public boolean inAll(long mask) {
+        long all = sources.size() == 64 ? -1L : (1L << sources.size()) - 1;
+        return mask == all;
+    }
+
+    public static class UserPresence {
+        public final String userId;
+        public final String name;
+        public final long sources;
+
+        public UserPresence(String userId, String name, long sources) {
+            this.userId = userId;
+            this.name = name;
+            this.sources = sources;
+        }
+    }
+
+    public static class EntPresence {
+        public final String userId;
+        public final String name;
+        public final String app;
+        public final String role;
+        public long sources;
+
+        public EntPresence(String userId, String name, String app, String role, long sources) {
+            this.userId = userId;
+            this.name = name;
+            this.app = app;
+            this.role = role;
+            this.sources = sources;
+        }
+    }
+}
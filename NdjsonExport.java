@@ -0,0 +1,141 @@
+package org.example.democolauam;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// A diff as newline-delimited JSON: one object per line, written with Jackson's streaming
+// generator as the rows arrive (no tree, no DiffResult). Lines, each with a "type":
+//   start        {mode}
+//   userAdded    {userId, name}            userRemoved  {userId, name}
+//   fieldChanged {userId, name, field, oldValue, newValue}
+//   entAdded     {userId, name, app, role} entRemoved   {userId, name, app, role}
+//   summary      {usersAdded, usersRemoved, fieldChanges, entAdded, entRemoved}, last on success
+//   error        {message}, last on failure
+// Row order depends on the mode named in start, clients must not assume one:
+//   memory    grouped by type (userAdded, userRemoved, fieldChanged, entAdded, entRemoved), each
+//             sorted by userId (entitlements then app, role); the same order as the five lists
+//   external  user by user in folded-userId order, each user's rows grouped by type as above
+// The summary counts are the same either way.
+final class NdjsonExport implements DiffService.DiffSink, Closeable {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final JsonGenerator json;
+    private int usersAdded, usersRemoved, fieldChanges, entAdded, entRemoved;
+
+    NdjsonExport(OutputStream out) throws IOException {
+        this.json = JSON.createGenerator(out);
+        // the response stream belongs to the container
+        this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    // sent right away, before any parsing, so clients see the response start
+    void start(String mode) {
+        event("start", "mode", mode);
+        flush();
+    }
+
+    @Override
+    public void userAdded(DiffResult.UserChange c) {
+        usersAdded++;
+        event("userAdded", "userId", c.userId, "name", c.name);
+    }
+
+    @Override
+    public void userRemoved(DiffResult.UserChange c) {
+        usersRemoved++;
+        event("userRemoved", "userId", c.userId, "name", c.name);
+    }
+
+    @Override
+    public void fieldChanged(DiffResult.UserFieldChange c) {
+        fieldChanges++;
+        event("fieldChanged", "userId", c.userId, "name", c.name, "field", c.field,
+                "oldValue", c.oldValue, "newValue", c.newValue);
+    }
+
+    @Override
+    public void entAdded(DiffResult.EntChange c) {
+        entAdded++;
+        event("entAdded", "userId", c.userId, "name", c.name, "app", c.app, "role", c.role);
+    }
+
+    @Override
+    public void entRemoved(DiffResult.EntChange c) {
+        entRemoved++;
+        event("entRemoved", "userId", c.userId, "name", c.name, "app", c.app, "role", c.role);
+    }
+
+    void summary() {
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", "summary");
+            json.writeNumberField("usersAdded", usersAdded);
+            json.writeNumberField("usersRemoved", usersRemoved);
+            json.writeNumberField("fieldChanges", fieldChanges);
+            json.writeNumberField("entAdded", entAdded);
+            json.writeNumberField("entRemoved", entRemoved);
+            json.writeEndObject();
+            json.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flush();
+    }
+
+    void error(String message) {
+        event("error", "message", message);
+        flush();
+    }
+
+    int usersAdded() {
+        return usersAdded;
+    }
+
+    int usersRemoved() {
+        return usersRemoved;
+    }
+
+    int fieldChanges() {
+        return fieldChanges;
+    }
+
+    int entAdded() {
+        return entAdded;
+    }
+
+    int entRemoved() {
+        return entRemoved;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+
+    // fields: name, value, name, value ...
+    private void event(String type, String... fields) {
+        try {
+            json.writeStartObject();
+            json.writeStringField("type", type);
+            for (int i = 0; i < fields.length; i += 2) json.writeStringField(fields[i], fields[i + 1]);
+            json.writeEndObject();
+            json.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            json.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
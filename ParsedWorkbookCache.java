@@ -0,0 +1,98 @@
+package org.example.democolauam;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parsed (deduped) uploads keyed by the SHA-256 of the file bytes, so the same baseline
+// uploaded again skips POI. Bounded by entry count and estimated heap, least recently used goes first.
+@Component
+public class ParsedWorkbookCache implements MeterBinder {
+
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {}
+
+    private record Entry(List<EntitlementRecord> records, long bytes) {}
+
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ParsedWorkbookCache(@Value("${parser.cache.max-entries:8}") int maxEntries,
+                               @Value("${parser.cache.max-mb:512}") long maxMb) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxMb * 1024 * 1024;
+    }
+
+    public synchronized List<EntitlementRecord> get(String sha256) {
+        Entry e = map.get(sha256);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.records();
+    }
+
+    // returns the read-only list that is cached (and should be used from now on)
+    public List<EntitlementRecord> put(String sha256, List<EntitlementRecord> records) {
+        List<EntitlementRecord> ro = Collections.unmodifiableList(records);
+        long size = estimate(records);
+        if (maxEntries <= 0 || size > maxBytes) return ro;
+
+        synchronized (this) {
+            Entry prev = map.put(sha256, new Entry(ro, size));
+            if (prev != null) bytes -= prev.bytes();
+            bytes += size;
+
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                bytes -= eldest.bytes();
+                evictions++;
+            }
+        }
+        return ro;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, map.size(), bytes);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("parser.cache.entries", this, c -> c.stats().entries()).register(registry);
+        Gauge.builder("parser.cache.bytes", this, c -> c.stats().bytes()).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("parser.cache.requests", this, c -> c.stats().hits()).tag("result", "hit").register(registry);
+        FunctionCounter.builder("parser.cache.requests", this, c -> c.stats().misses()).tag("result", "miss").register(registry);
+        FunctionCounter.builder("parser.cache.evictions", this, c -> c.stats().evictions()).register(registry);
+    }
+
+    private static long estimate(List<EntitlementRecord> records) {
+        // record + key objects and four strings per row; app/role strings are mostly shared,
+        // so are the extra user attributes (only their array is counted)
+        long b = 64L * records.size();
+        for (EntitlementRecord r : records) {
+            b += 48 + len(r.userId) + len(r.name) + len(r.app) + len(r.role) + 16 + 4L * r.attributeCount();
+        }
+        return b;
+    }
+
+    private static int len(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
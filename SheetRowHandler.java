@@ -0,0 +1,13 @@
+package org.example.democolauam;
+
+// Callback for the streaming readers: one sheet at a time, one row at a time.
+interface SheetRowHandler {
+
+    void startSheet(int sheetIndex, String sheetName);
+
+    // rowNum is 0-based (same as Sheet.getRow), cells[i] is column i, missing cells are "";
+    // the array may be reused for the next row, don't keep it
+    void row(int rowNum, String[] cells);
+
+    void endSheet();
+}
@@ -0,0 +1,219 @@
+package org.example.democolauam;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Parsed baselines kept on local disk as <id>.snap, so a monthly export is parsed once and then
+// loaded in milliseconds. Layout (big-endian, every int 4-byte aligned):
+//
+//   int magic "ARSN", int version, int rows, int strings
+//   int[strings + 1]  offsets of each string in the UTF-8 blob
+//   int[rows] x 4     userId, name, app, role columns (dictionary ids)
+//   byte[]            UTF-8 blob of all dictionary strings
+@Component
+public class SnapshotStore {
+
+    public record Info(String id, int rows, long bytes, Instant created) {}
+
+    private static final int MAGIC = 0x4152534E; // "ARSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".snap";
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,63}");
+
+    private final Path dir;
+
+    public SnapshotStore(@Value("${snapshot.dir:snapshots}") String dir) {
+        this.dir = Path.of(dir);
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot directory not usable: " + e.getMessage(), e);
+        }
+    }
+
+    // t: deduped rows as ExcelParser.parseTable builds them; a blank label gets a timestamp id
+    public Info save(String label, EntitlementTable t) {
+        String id = label == null || label.isBlank()
+                ? LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                : label.trim();
+        Path target = file(id);
+        // early answer only; the link below is what decides between concurrent saves
+        if (Files.exists(target)) {
+            throw new IllegalArgumentException("Snapshot already exists: " + id);
+        }
+
+        StringDictionary d = t.dictionary();
+
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, "snap-", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(t.size());
+                out.writeInt(d.size());
+
+                byte[][] utf8 = new byte[d.size()][];
+                int offset = 0;
+                out.writeInt(0);
+                for (int i = 0; i < d.size(); i++) {
+                    utf8[i] = d.get(i).getBytes(StandardCharsets.UTF_8);
+                    offset += utf8[i].length;
+                    out.writeInt(offset);
+                }
+
+                for (int i = 0; i < t.size(); i++) out.writeInt(t.userIdAt(i));
+                for (int i = 0; i < t.size(); i++) out.writeInt(t.nameAt(i));
+                for (int i = 0; i < t.size(); i++) out.writeInt(t.appAt(i));
+                for (int i = 0; i < t.size(); i++) out.writeInt(t.roleAt(i));
+
+                for (byte[] b : utf8) out.write(b);
+            }
+            // Readers only ever see complete files. Linking fails if the target exists, so of two
+            // saves with the same id exactly one wins. Where the filesystem has no hard links, a
+            // move that doesn't replace is the fallback; it checks for the target before renaming,
+            // so it is only nearly as strict.
+            try {
+                try {
+                    Files.createLink(target, tmp);
+                } catch (FileAlreadyExistsException e) {
+                    throw e;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.move(tmp, target);
+                }
+            } catch (FileAlreadyExistsException e) {
+                throw new IllegalArgumentException("Snapshot already exists: " + id);
+            }
+            return info(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot write failed: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    // IllegalArgumentException for an invalid id
+    public boolean exists(String id) {
+        return Files.exists(file(id));
+    }
+
+    public EntitlementTable load(String id) {
+        Path f = file(id);
+        if (!Files.isRegularFile(f)) {
+            throw new IllegalArgumentException("Unknown snapshot: " + id);
+        }
+
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int rows = header(buf, id);
+            int strings = buf.getInt(12);
+
+            // columns are bulk-copied straight out of the mapping
+            IntBuffer ints = buf.position(HEADER_BYTES).slice().asIntBuffer();
+            int[] offsets = new int[strings + 1];
+            ints.get(offsets);
+            int[] userId = new int[rows];
+            int[] name = new int[rows];
+            int[] app = new int[rows];
+            int[] role = new int[rows];
+            ints.get(userId).get(name).get(app).get(role);
+
+            byte[] blob = new byte[offsets[strings]];
+            buf.get(HEADER_BYTES + 4 * (strings + 1 + 4 * rows), blob);
+
+            // ids are dictionary positions and the strings are already distinct
+            String[] values = new String[Math.max(strings, 16)];
+            for (int i = 0; i < strings; i++) {
+                values[i] = new String(blob, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+            return new EntitlementTable(StringDictionary.ofDistinct(values, strings), userId, name, app, role, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot read failed: " + e.getMessage(), e);
+        }
+    }
+
+    // newest first
+    public List<Info> list() {
+        List<Info> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                if (!f.getFileName().toString().endsWith(SUFFIX)) continue;
+                try {
+                    out.add(info(f));
+                } catch (IOException | IllegalStateException ignored) {
+                    // unreadable or foreign file, not listed
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot listing failed: " + e.getMessage(), e);
+        }
+        out.sort(Comparator.comparing(Info::created).reversed());
+        return out;
+    }
+
+    private Info info(Path f) throws IOException {
+        String name = f.getFileName().toString();
+        String id = name.substring(0, name.length() - SUFFIX.length());
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+            while (head.hasRemaining() && ch.read(head) >= 0) { }
+            int rows = header(head.flip(), id);
+            return new Info(id, rows, ch.size(), Files.getLastModifiedTime(f).toInstant());
+        }
+    }
+
+    // checks magic and version, returns the row count
+    private static int header(ByteBuffer buf, String id) {
+        if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a snapshot file: " + id);
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported snapshot version " + version + ": " + id);
+        }
+        return buf.getInt(8);
+    }
+
+    private Path file(String id) {
+        // ids become file names, nothing that can leave the directory
+        if (!isValidId(id)) {
+            throw new IllegalArgumentException("Invalid snapshot id: " + id);
+        }
+        return dir.resolve(id + SUFFIX);
+    }
+
+    static boolean isValidId(String id) {
+        return id != null && ID.matcher(id).matches();
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) { }
+    }
+}
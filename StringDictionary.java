@@ -0,0 +1,66 @@
+package org.example.democolauam;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Maps each distinct string to a dense int id (0, 1, 2, ...), shared by all columns of a table.
+// Not thread-safe: fill it from one thread, e.g. one dictionary per parsed file.
+public final class StringDictionary {
+
+    private Map<String, Integer> ids;
+    private String[] values;
+    private int size;
+
+    public StringDictionary() {
+        this(256);
+    }
+
+    public StringDictionary(int expectedSize) {
+        int c = Math.max(expectedSize, 16);
+        this.ids = new HashMap<>(c * 4 / 3 + 1);
+        this.values = new String[c];
+    }
+
+    // Wraps already distinct strings, id = position; the reverse map is only built once
+    // intern/find is used, a loaded snapshot usually just needs get().
+    static StringDictionary ofDistinct(String[] values, int size) {
+        StringDictionary d = new StringDictionary(0);
+        d.ids = null;
+        d.values = values;
+        d.size = size;
+        return d;
+    }
+
+    public int intern(String s) {
+        if (s == null) s = "";
+        Integer id = ids().get(s);
+        if (id != null) return id;
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size] = s;
+        ids().put(s, size);
+        return size++;
+    }
+
+    // -1 if the string was never interned
+    public int find(String s) {
+        Integer id = ids().get(s == null ? "" : s);
+        return id == null ? -1 : id;
+    }
+
+    private Map<String, Integer> ids() {
+        if (ids == null) {
+            ids = new HashMap<>(size * 4 / 3 + 16);
+            for (int i = 0; i < size; i++) ids.put(values[i], i);
+        }
+        return ids;
+    }
+
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
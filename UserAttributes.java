@@ -0,0 +1,29 @@
+package org.example.democolauam;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The extra per-user columns (department, manager, ...) the parser captures next to the name.
+// Records carry the values in this order; DiffService reports a change under the column's name.
+@Component
+public class UserAttributes {
+
+    static final UserAttributes NONE = new UserAttributes(new String[0]);
+
+    private final List<String> names;
+
+    public UserAttributes(@Value("${parser.user-attributes:Department,Manager,Status,Cost Center,Last Login}") String[] names) {
+        this.names = Arrays.stream(names).map(String::trim).filter(n -> !n.isEmpty()).distinct().toList();
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
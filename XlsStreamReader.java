@@ -0,0 +1,174 @@
+package org.example.democolauam;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+// Reads legacy .xls (BIFF8) sheets through POI's HSSF event model, record by record, without
+// building an HSSFWorkbook. Only the shared string table is held; rows are handed on as they end.
+final class XlsStreamReader {
+
+    private XlsStreamReader() {
+    }
+
+    // canonical: applied once per shared string, as in XlsxStreamReader
+    static void read(Path file, UnaryOperator<String> canonical, SheetRowHandler handler) throws Exception {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file.toFile(), true)) {
+            Listener listener = new Listener(canonical, handler);
+            HSSFRequest req = new HSSFRequest();
+            req.addListenerForAllRecords(listener);
+            // RK / MulRK cells arrive as NumberRecords
+            new HSSFEventFactory().processWorkbookEvents(req, fs);
+            listener.finish();
+        }
+    }
+
+    // Same rules as XlsxStreamReader.cellToString for the matching .xlsx cell types
+    private static String number(double d) {
+        if (Math.abs(d - Math.rint(d)) < 0.0000001) return Long.toString(Math.round(d));
+        return Double.toString(d);
+    }
+
+    private static final class Listener implements HSSFListener {
+
+        private final UnaryOperator<String> canonical;
+        private final SheetRowHandler handler;
+
+        private final List<BoundSheetRecord> bound = new ArrayList<>();
+        private BoundSheetRecord[] sheetsByBof;
+        private SSTRecord sst;
+        // canonical strings by SST index, filled as cells reference them
+        private String[] sstCanonical = new String[0];
+        private final Map<String, String> seen = new HashMap<>();
+
+        // globals and each sheet are top-level substreams (depth 1); charts embedded in a sheet nest deeper
+        private int depth;
+        private int substream = -1;
+        private int sheetIndex = -1;
+        private boolean inSheet;
+
+        private final List<String> cells = new ArrayList<>();
+        private int rowNum = -1;
+        // column waiting for the StringRecord that follows a string formula
+        private int pendingFormula = -1;
+
+        Listener(UnaryOperator<String> canonical, SheetRowHandler handler) {
+            this.canonical = canonical;
+            this.handler = handler;
+        }
+
+        @Override
+        public void processRecord(Record rec) {
+            switch (rec) {
+                case BOFRecord bof -> {
+                    if (++depth != 1 || bof.getType() == BOFRecord.TYPE_WORKBOOK) return;
+                    substream++;
+                    if (bof.getType() != BOFRecord.TYPE_WORKSHEET) return;
+                    if (sheetsByBof == null) sheetsByBof = BoundSheetRecord.orderByBofPosition(bound);
+                    String name = substream < sheetsByBof.length ? sheetsByBof[substream].getSheetname() : "Sheet" + (substream + 1);
+                    inSheet = true;
+                    rowNum = -1;
+                    handler.startSheet(++sheetIndex, name);
+                }
+                case EOFRecord eof -> {
+                    if (depth-- == 1 && inSheet) endSheet();
+                }
+                case BoundSheetRecord bs -> bound.add(bs);
+                case SSTRecord s -> {
+                    sst = s;
+                    sstCanonical = new String[s.getNumUniqueStrings()];
+                }
+                default -> {
+                    if (inSheet && depth == 1) cell(rec);
+                }
+            }
+        }
+
+        private void cell(Record rec) {
+            if (rec instanceof StringRecord s) {
+                if (pendingFormula >= 0) set(pendingFormula, s.getString());
+                pendingFormula = -1;
+                return;
+            }
+            if (!(rec instanceof CellValueRecordInterface cv)) return;
+            pendingFormula = -1;
+
+            String value = switch (rec) {
+                case LabelSSTRecord l -> shared(l.getSSTIndex());
+                case LabelRecord l -> l.getValue();
+                case NumberRecord n -> number(n.getValue());
+                case BoolErrRecord b -> b.isBoolean() ? Boolean.toString(b.getBooleanValue()) : "";
+                case FormulaRecord f -> {
+                    CellType t = f.getCachedResultTypeEnum();
+                    if (t == CellType.STRING) {
+                        pendingFormula = cv.getColumn();
+                        yield "";
+                    }
+                    // like the .xlsx path: formula numbers are not rounded, boolean / error results are blank
+                    yield t == CellType.NUMERIC ? Double.toString(f.getValue()) : "";
+                }
+                default -> null; // blanks
+            };
+            if (value == null) return;
+
+            if (cv.getRow() != rowNum) {
+                flushRow();
+                rowNum = cv.getRow();
+            }
+            set(cv.getColumn(), value);
+        }
+
+        private String shared(int index) {
+            if (index < 0 || index >= sstCanonical.length) return "";
+            String s = sstCanonical[index];
+            if (s == null) {
+                s = seen.computeIfAbsent(canonical.apply(sst.getString(index).getString()), k -> k);
+                sstCanonical[index] = s;
+            }
+            return s;
+        }
+
+        private void set(int col, String value) {
+            while (cells.size() <= col) cells.add("");
+            cells.set(col, value);
+        }
+
+        private void flushRow() {
+            if (rowNum >= 0 && !cells.isEmpty()) handler.row(rowNum, cells.toArray(new String[0]));
+            cells.clear();
+        }
+
+        private void endSheet() {
+            flushRow();
+            rowNum = -1;
+            pendingFormula = -1;
+            inSheet = false;
+            handler.endSheet();
+        }
+
+        void finish() {
+            if (inSheet) endSheet();
+        }
+    }
+}
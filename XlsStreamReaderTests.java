@@ -0,0 +1,142 @@
+package org.example.democolauam;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class XlsStreamReaderTests {
+
+    private Path file;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    @Test
+    void sheetsInWorkbookOrder() throws Exception {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            wb.createSheet("First").createRow(0).createCell(0).setCellValue("a");
+            wb.createSheet("Empty");
+            wb.createSheet("Third").createRow(2).createCell(1).setCellValue("b");
+            write(wb);
+        }
+        assertEquals(List.of(
+                "start 0 First", "0 [a]", "end",
+                "start 1 Empty", "end",
+                "start 2 Third", "2 [, b]", "end"
+        ), events(UnaryOperator.identity()));
+    }
+
+    @Test
+    void cellTypes() throws Exception {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            Sheet sh = wb.createSheet("Users");
+            Row r = sh.createRow(0);
+            r.createCell(0).setCellValue(42);
+            r.createCell(1).setCellValue(1.5);
+            r.createCell(2).setCellValue(true);
+            r.createCell(3).setCellValue(false);
+            r.createCell(5).setCellValue("text");
+
+            Row f = sh.createRow(1);
+            f.createCell(0).setCellFormula("\"AB\"&\"C\"");
+            f.createCell(1).setCellFormula("1+2");
+            f.createCell(2).setCellFormula("1=1");
+            f.createCell(3).setCellValue("after");
+
+            // blank rows are not reported, the next row keeps its number
+            sh.createRow(2).createCell(0).setBlank();
+            sh.createRow(3).createCell(0).setCellValue("u1");
+
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            write(wb);
+        }
+        assertEquals(List.of(
+                "start 0 Users",
+                "0 [42, 1.5, true, false, , text]",
+                // like the .xlsx path: formula numbers stay unrounded, boolean results are blank
+                "1 [ABC, 3.0, , after]",
+                "3 [u1]",
+                "end"
+        ), events(UnaryOperator.identity()));
+    }
+
+    @Test
+    void sharedStringsCanonicalOnce() throws Exception {
+        try (HSSFWorkbook wb = new HSSFWorkbook()) {
+            for (String name : List.of("S1", "S2")) {
+                Sheet sh = wb.createSheet(name);
+                sh.createRow(0).createCell(0).setCellValue("Admin");
+                sh.createRow(1).createCell(0).setCellValue("admin");
+            }
+            write(wb);
+        }
+        int[] calls = {0};
+        List<String> cells = new ArrayList<>();
+        XlsStreamReader.read(file, s -> {
+            calls[0]++;
+            return s.toUpperCase(Locale.ROOT);
+        }, new Collector(new ArrayList<>()) {
+            @Override
+            public void row(int rowNum, String[] row) {
+                cells.add(row[0]);
+            }
+        });
+
+        assertEquals(List.of("ADMIN", "ADMIN", "ADMIN", "ADMIN"), cells);
+        // once per distinct shared string, and equal results share one instance
+        assertEquals(2, calls[0]);
+        for (String s : cells) assertSame(cells.get(0), s);
+    }
+
+    private void write(HSSFWorkbook wb) throws Exception {
+        file = Files.createTempFile("xls-reader-", ".xls");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            wb.write(out);
+        }
+    }
+
+    private List<String> events(UnaryOperator<String> canonical) throws Exception {
+        List<String> out = new ArrayList<>();
+        XlsStreamReader.read(file, canonical, new Collector(out));
+        return out;
+    }
+
+    private static class Collector implements SheetRowHandler {
+        private final List<String> out;
+
+        Collector(List<String> out) {
+            this.out = out;
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+            out.add("start " + sheetIndex + " " + sheetName);
+        }
+
+        @Override
+        public void row(int rowNum, String[] cells) {
+            out.add(rowNum + " " + Arrays.toString(cells));
+        }
+
+        @Override
+        public void endSheet() {
+            out.add("end");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.example.democolauam;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Reads .xlsx sheets through POI's event model (XSSFReader + SAX), without building the workbook DOM.
+final class XlsxStreamReader {
+
+    private XlsxStreamReader() {
+    }
+
+    // canonical: applied once per shared string; every cell pointing at it gets the same result
+    static void read(Path file, UnaryOperator<String> canonical, SheetRowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            String[] sst = sharedStrings(pkg, canonical);
+
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int s = 0;
+            while (it.hasNext()) {
+                try (InputStream in = it.next()) {
+                    handler.startSheet(s++, it.getSheetName());
+                    readSheet(in, sst, handler);
+                    handler.endSheet();
+                }
+            }
+        }
+    }
+
+    // Parses the sheets concurrently, one handler per sheet; handlers are returned in workbook order
+    static <H extends SheetRowHandler> List<H> readParallel(Path file, ExecutorService pool, UnaryOperator<String> canonical,
+                                                            Supplier<H> handlers) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            String[] sst = sharedStrings(pkg, canonical);
+
+            // part lookup stays on this thread, only the sheet XML is read on the pool
+            List<H> out = new ArrayList<>();
+            List<Future<?>> pending = new ArrayList<>();
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                it.next().close();
+                int index = out.size();
+                String name = it.getSheetName();
+                PackagePart part = it.getSheetPart();
+                H handler = handlers.get();
+                out.add(handler);
+                pending.add(pool.submit(() -> {
+                    try (InputStream in = part.getInputStream()) {
+                        handler.startSheet(index, name);
+                        readSheet(in, sst, handler);
+                        handler.endSheet();
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> f : pending) f.get();
+            } catch (ExecutionException e) {
+                for (Future<?> f : pending) f.cancel(true);
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+            return out;
+        }
+    }
+
+    // The whole table is mapped up front, before any sheet thread starts, so the array is only read
+    // concurrently. Equal results share one String instance.
+    private static String[] sharedStrings(OPCPackage pkg, UnaryOperator<String> canonical) throws Exception {
+        CountedSharedStrings table = new CountedSharedStrings(pkg);
+        String[] out = new String[table.size];
+        Map<String, String> seen = new HashMap<>();
+        for (int i = 0; i < out.length; i++) {
+            out[i] = seen.computeIfAbsent(canonical.apply(table.getItemAt(i).getString()), k -> k);
+        }
+        return out;
+    }
+
+    // uniqueCount is optional in the file (and not always right), so the items are counted as the
+    // table's own parse adds them
+    private static final class CountedSharedStrings extends ReadOnlySharedStringsTable {
+        private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+        // no initializers: the superclass constructor parses the part before they would run
+        private boolean inSst;
+        private boolean inItem;
+        private int size;
+
+        CountedSharedStrings(OPCPackage pkg) throws IOException, SAXException {
+            // false = skip phonetic runs, same text as XSSFCell.getStringCellValue()
+            super(pkg, false);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes) throws SAXException {
+            super.startElement(uri, localName, name, attributes);
+            if (uri != null && !MAIN_NS.equals(uri)) return;
+            if ("sst".equals(localName)) inSst = true;
+            else if ("si".equals(localName)) inItem = true;
+        }
+
+        // same condition under which the superclass adds an item
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            super.endElement(uri, localName, name);
+            if (uri != null && !MAIN_NS.equals(uri)) return;
+            if ("si".equals(localName) && inSst && inItem) size++;
+        }
+    }
+
+    static void readSheet(InputStream sheetXml, String[] sst, SheetRowHandler handler) throws Exception {
+        XMLReader xml = XMLHelper.newXMLReader();
+        xml.setContentHandler(new SheetContents(sst, handler));
+        xml.parse(new InputSource(sheetXml));
+    }
+
+    // Same rules as the old DOM cellToString(Cell), applied to the raw <c t=".."><v>..</v></c> values
+    private static String cellToString(String type, boolean formula, String raw, String[] sst) {
+        try {
+            if (formula) {
+                if ("str".equals(type)) return raw;
+                if (type == null || "n".equals(type)) {
+                    return Double.toString(raw.isEmpty() ? 0.0 : Double.parseDouble(raw));
+                }
+                return ""; // boolean / error results
+            }
+            if (type == null || "n".equals(type)) {
+                if (raw.isEmpty()) return "";
+                double d = Double.parseDouble(raw);
+                if (Math.abs(d - Math.rint(d)) < 0.0000001) return Long.toString(Math.round(d));
+                return Double.toString(d);
+            }
+            return switch (type) {
+                case "s" -> sst[Integer.parseInt(raw.trim())];
+                case "inlineStr", "str", "d" -> raw;
+                case "b" -> Boolean.toString("1".equals(raw.trim()));
+                default -> ""; // "e"
+            };
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static final class SheetContents extends DefaultHandler {
+
+        private final String[] sst;
+        private final SheetRowHandler handler;
+
+        private final List<String> cells = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+
+        private int rowNum = -1;
+        private int col = -1;
+        private String cellType;
+        private boolean cellFormula;
+        private boolean inValue;
+        private boolean inInline;
+        private boolean inPhonetic;
+
+        SheetContents(String[] sst, SheetRowHandler handler) {
+            this.sst = sst;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            switch (localName) {
+                case "row" -> {
+                    String r = atts.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    col = -1;
+                    cells.clear();
+                }
+                case "c" -> {
+                    String ref = atts.getValue("r");
+                    col = ref != null ? new CellReference(ref).getCol() : col + 1;
+                    cellType = atts.getValue("t");
+                    cellFormula = false;
+                    text.setLength(0);
+                }
+                case "f" -> cellFormula = true;
+                case "v" -> inValue = true;
+                case "is" -> inInline = true;
+                case "rPh" -> inPhonetic = true;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v" -> inValue = false;
+                case "is" -> inInline = false;
+                case "rPh" -> inPhonetic = false;
+                case "c" -> {
+                    while (cells.size() <= col) cells.add("");
+                    cells.set(col, cellToString(cellType, cellFormula, text.toString(), sst));
+                }
+                case "row" -> handler.row(rowNum, cells.toArray(new String[0]));
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue || (inInline && !inPhonetic)) text.append(ch, start, length);
+        }
+    }
+}
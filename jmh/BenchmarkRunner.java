@@ -0,0 +1,24 @@
+package org.example.democolauam;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the GC profiler, so allocation rate (gc.alloc.rate.norm, bytes/op)
+// is reported next to throughput. Optional args: a regex of benchmarks to include.
+// jmh/ is only a directory kept apart from the application sources; this tree has no build file
+// that compiles it, so run it from a build that adds JMH and puts the app on the classpath.
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "org\\.example\\.democolauam\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opts).run();
+    }
+}
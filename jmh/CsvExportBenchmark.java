@@ -0,0 +1,37 @@
+package org.example.democolauam;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// csvFromRows via csvEnt, into a sink that discards the bytes: the cost of rendering alone
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CsvExportBenchmark {
+
+    @Param({"10000", "1000000"})
+    int rows;
+
+    private List<DiffResult.EntChange> changes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        changes = new ArrayList<>(rows);
+        for (EntitlementRecord r : WorkbookGenerator.records(rows, 20, 10, 1)) {
+            changes.add(new DiffResult.EntChange(r.userId, r.name, r.app, r.role));
+        }
+    }
+
+    @Benchmark
+    public void csvEnt() throws IOException {
+        CsvExport.csvEnt(OutputStream.nullOutputStream(), changes);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.democolauam;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Diff of a generated baseline against its "next month", on both the String and the int-id path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DiffBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    @Param({"0.01", "0.1"})
+    double changeRatio;
+
+    @Param({"20"})
+    int apps;
+
+    @Param({"10"})
+    int roles;
+
+    // 1 = single-threaded, 0 = partitioned over the cores
+    @Param({"1", "0"})
+    int partitions;
+
+    private DiffService diff;
+    private List<EntitlementRecord> raw;
+    private List<EntitlementRecord> oldRecs;
+    private List<EntitlementRecord> newRecs;
+    private EntitlementTable oldTab;
+    private EntitlementTable newTab;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        diff = new DiffService(UserAttributes.NONE, partitions);
+        raw = WorkbookGenerator.records(rows, apps, roles, 1);
+        oldRecs = ExcelParser.dedupe(raw);
+        newRecs = ExcelParser.dedupe(WorkbookGenerator.mutate(oldRecs, changeRatio, apps, roles, 2));
+        oldTab = EntitlementTable.of(oldRecs, new StringDictionary());
+        newTab = EntitlementTable.of(newRecs, new StringDictionary());
+    }
+
+    @Benchmark
+    public DiffResult compareLists() {
+        return diff.compare(oldRecs, newRecs);
+    }
+
+    @Benchmark
+    public DiffResult compareTables() {
+        return diff.compare(oldTab, newTab);
+    }
+
+    // the generator repeats (user, app, role) keys, so dedupe has real work to do
+    @Benchmark
+    public List<EntitlementRecord> dedupe() {
+        return ExcelParser.dedupe(new ArrayList<>(raw));
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.democolauam;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Full parse of a generated workbook and of the same data as CSV (no SHA-256 cache: the Path
+// overloads always parse)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    @Param({"1", "4"})
+    int sheets;
+
+    @Param({"20"})
+    int apps;
+
+    @Param({"10"})
+    int roles;
+
+    private ExcelParser parser;
+    private Path xlsx;
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        parser = new ExcelParser(new ParsedWorkbookCache(0, 0), new SimpleMeterRegistry(), UserAttributes.NONE);
+        List<EntitlementRecord> recs = WorkbookGenerator.records(rows, apps, roles, 1);
+        xlsx = WorkbookGenerator.writeXlsx(recs, sheets, Files.createTempFile("bench-", ".xlsx"));
+        csv = WorkbookGenerator.writeCsv(recs, Files.createTempFile("bench-", ".csv"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        parser.shutdown();
+        Files.deleteIfExists(xlsx);
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public List<EntitlementRecord> parseAllSheets() {
+        return parser.parseAllSheets(xlsx);
+    }
+
+    @Benchmark
+    public List<EntitlementRecord> parseCsv() {
+        return parser.parseAllSheets(csv, ExcelParser.Format.CSV);
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.democolauam;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Synthetic access-review exports for the benchmarks: a population of users with app/role
+// entitlements, a "next month" version with a given share of changes, and .xlsx files of both.
+final class WorkbookGenerator {
+
+    private WorkbookGenerator() {
+    }
+
+    // ~4 entitlements per user; apps/roles: how many distinct values each column has
+    static List<EntitlementRecord> records(int rows, int apps, int roles, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int users = Math.max(1, rows / 4);
+        List<EntitlementRecord> out = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int u = rnd.nextInt(users);
+            out.add(new EntitlementRecord("U" + u, "User " + u, "App" + rnd.nextInt(apps), "Role" + rnd.nextInt(roles)));
+        }
+        return out;
+    }
+
+    // changeRatio of the rows are touched: a third removed, a third added, a third renamed
+    static List<EntitlementRecord> mutate(List<EntitlementRecord> base, double changeRatio, int apps, int roles, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int users = Math.max(1, base.size() / 4);
+        List<EntitlementRecord> out = new ArrayList<>(base.size() + base.size() / 8);
+        for (EntitlementRecord r : base) {
+            if (rnd.nextDouble() >= changeRatio) {
+                out.add(r);
+                continue;
+            }
+            switch (rnd.nextInt(3)) {
+                case 0 -> { } // removed
+                case 1 -> {
+                    out.add(r);
+                    int u = users + rnd.nextInt(users);
+                    out.add(new EntitlementRecord("U" + u, "User " + u, "App" + rnd.nextInt(apps), "Role" + rnd.nextInt(roles)));
+                }
+                default -> out.add(new EntitlementRecord(r.userId, r.name + " (renamed)", r.app, r.role));
+            }
+        }
+        return out;
+    }
+
+    // Same data as a CSV export (for comparing the input paths)
+    static Path writeCsv(List<EntitlementRecord> recs, Path target) {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            DiffResult.EntChange[] rows = new DiffResult.EntChange[recs.size()];
+            for (int i = 0; i < rows.length; i++) {
+                EntitlementRecord r = recs.get(i);
+                rows[i] = new DiffResult.EntChange(r.userId, r.name, r.app, r.role);
+            }
+            CsvExport.csvEnt(out, List.of(rows));
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("CSV generation failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Rows split evenly over the sheets, each with the usual header
+    static Path writeXlsx(List<EntitlementRecord> recs, int sheets, Path target) {
+        // shared strings, like Excel writes them, so the parser benchmarks go through the SST path
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(null, 1000, false, true);
+             OutputStream out = Files.newOutputStream(target)) {
+            int perSheet = (recs.size() + sheets - 1) / Math.max(sheets, 1);
+            for (int s = 0; s < Math.max(sheets, 1); s++) {
+                Sheet sheet = wb.createSheet("Sheet" + (s + 1));
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("UserID");
+                header.createCell(1).setCellValue("Name");
+                header.createCell(2).setCellValue("Application");
+                header.createCell(3).setCellValue("Role");
+
+                int from = s * perSheet;
+                int to = Math.min(recs.size(), from + perSheet);
+                for (int i = from; i < to; i++) {
+                    EntitlementRecord r = recs.get(i);
+                    Row row = sheet.createRow(i - from + 1);
+                    row.createCell(0).setCellValue(r.userId);
+                    row.createCell(1).setCellValue(r.name);
+                    row.createCell(2).setCellValue(r.app);
+                    row.createCell(3).setCellValue(r.role);
+                }
+            }
+            wb.write(out);
+            wb.dispose();
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Workbook generation failed: " + e.getMessage(), e);
+        }
+    }
+}